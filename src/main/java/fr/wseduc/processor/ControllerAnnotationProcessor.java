@@ -19,6 +19,7 @@ package fr.wseduc.processor;
 import fr.wseduc.bus.BusAddress;
 import fr.wseduc.rs.*;
 import fr.wseduc.security.ActionType;
+import fr.wseduc.security.Sanitize;
 import fr.wseduc.security.SecuredAction;
 
 import javax.annotation.processing.*;
@@ -34,7 +35,7 @@ import java.util.*;
 
 @SupportedAnnotationTypes({"fr.wseduc.security.SecuredAction", "fr.wseduc.bus.BusAddress",
 		"fr.wseduc.rs.Get", "fr.wseduc.rs.Post", "fr.wseduc.rs.Delete", "fr.wseduc.rs.Put",
-		"fr.wseduc.rs.ApiDoc", "fr.wseduc.rs.ApiPrefixDoc"})
+		"fr.wseduc.rs.ApiDoc", "fr.wseduc.rs.ApiPrefixDoc", "fr.wseduc.security.Sanitize"})
 @SupportedSourceVersion(SourceVersion.RELEASE_7)
 public class ControllerAnnotationProcessor extends AbstractProcessor {
 
@@ -152,7 +153,7 @@ public class ControllerAnnotationProcessor extends AbstractProcessor {
 			Set<String> controllerRoutes = getController(routes, clazz);
 			controllerRoutes.add("{ \"httpMethod\" : \"POST\", \"path\" : \"" +
 					annotation.value() + "\", \"method\" : \"" + element.getSimpleName().toString() +
-					"\", \"regex\" : " + annotation.regex() + "}");
+					"\", \"regex\" : " + annotation.regex() + sanitize(element) + "}");
 		}
 
 		for (Element element : roundEnv.getElementsAnnotatedWith(Get.class)) {
@@ -164,7 +165,7 @@ public class ControllerAnnotationProcessor extends AbstractProcessor {
 			Set<String> controllerRoutes = getController(routes, clazz);
 			controllerRoutes.add("{ \"httpMethod\" : \"GET\", \"path\" : \"" +
 					annotation.value() + "\", \"method\" : \"" + element.getSimpleName().toString() +
-					"\", \"regex\" : " + annotation.regex() + "}");
+					"\", \"regex\" : " + annotation.regex() + sanitize(element) + "}");
 		}
 
 		for (Element element : roundEnv.getElementsAnnotatedWith(Put.class)) {
@@ -176,7 +177,7 @@ public class ControllerAnnotationProcessor extends AbstractProcessor {
 			Set<String> controllerRoutes = getController(routes, clazz);
 			controllerRoutes.add("{ \"httpMethod\" : \"PUT\", \"path\" : \"" +
 					annotation.value() + "\", \"method\" : \"" + element.getSimpleName().toString() +
-					"\", \"regex\" : " + annotation.regex() + "}");
+					"\", \"regex\" : " + annotation.regex() + sanitize(element) + "}");
 		}
 
 		for (Element element : roundEnv.getElementsAnnotatedWith(Delete.class)) {
@@ -188,7 +189,7 @@ public class ControllerAnnotationProcessor extends AbstractProcessor {
 			Set<String> controllerRoutes = getController(routes, clazz);
 			controllerRoutes.add("{ \"httpMethod\" : \"DELETE\", \"path\" : \"" +
 					annotation.value() + "\", \"method\" : \"" + element.getSimpleName().toString() +
-					"\", \"regex\" : " + annotation.regex() + "}");
+					"\", \"regex\" : " + annotation.regex() + sanitize(element) + "}");
 		}
 
 		for (Element element : roundEnv.getElementsAnnotatedWith(BusAddress.class)) {
@@ -206,6 +207,14 @@ public class ControllerAnnotationProcessor extends AbstractProcessor {
 		writeFile("", routes);
 	}
 
+	private String sanitize(Element element) {
+		Sanitize annotation = element.getAnnotation(Sanitize.class);
+		if (annotation == null) {
+			return "";
+		}
+		return ", \"sanitize\" : \"" + annotation.value().name() + "\"";
+	}
+
 	private Set<String> getController(Map<String, Set<String>> routes, TypeElement clazz) {
 		Set<String> controllerRoutes = routes.get(clazz.getQualifiedName().toString());
 		if (controllerRoutes == null) {
@@ -0,0 +1,33 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.wseduc.security;
+
+import java.lang.annotation.*;
+
+/*
+ * XSS cleaning of the route request : NONE for binary uploads, proxies or server to server apis,
+ * PARAMS to clean only params and headers, ALL (default without annotation) to clean form attributes
+ * and json bodies read with RequestUtils too.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Documented
+@Target(ElementType.METHOD)
+public @interface Sanitize {
+
+	SanitizePolicy value();
+
+}
@@ -43,6 +43,7 @@ import fr.wseduc.webutils.http.HttpMethod;
 import fr.wseduc.webutils.http.Renders;
 import fr.wseduc.webutils.request.filter.SecurityHandler;
 import fr.wseduc.webutils.security.ActionType;
+import fr.wseduc.webutils.security.SanitizePolicy;
 import fr.wseduc.webutils.security.SecuredAction;
 
 public abstract class Controller extends Renders {
@@ -50,6 +51,7 @@ public abstract class Controller extends Renders {
 	private static final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
 	protected RouteMatcher rm;
 	private final Map<String, Set<Binding>> uriBinding;
+	private final Map<String, SanitizePolicy> sanitizePolicies = new HashMap<>();
 	protected Map<String, SecuredAction> securedActions;
 	protected EventBus eb;
 	protected String busPrefix = "";
@@ -86,6 +88,14 @@ public abstract class Controller extends Renders {
 						continue;
 					}
 					boolean regex = route.getBoolean("regex", false);
+					String sanitize = route.getString("sanitize");
+					if (sanitize != null) {
+						try {
+							sanitizePolicies.put(method, SanitizePolicy.valueOf(sanitize));
+						} catch (IllegalArgumentException e) {
+							log.error("Invalid sanitize policy " + sanitize + " on method " + method);
+						}
+					}
 					switch (httpMethod) {
 						case "POST":
 							if (regex) {
@@ -136,11 +146,12 @@ public abstract class Controller extends Renders {
 		}
 	}
 
-	private Handler<HttpServerRequest> execute(final String method) {
+	private Handler<HttpServerRequest> execute(final String method, SanitizePolicy policy) {
 		try {
 			final MethodHandle mh = lookup.bind(this, method,
 					MethodType.methodType(void.class, HttpServerRequest.class));
-			return new XSSHandler() {
+			// XSSHandler gives the request as received with the NONE policy
+			return new XSSHandler(policy) {
 
 				@Override
 				public void filter(HttpServerRequest request) {
@@ -165,11 +176,12 @@ public abstract class Controller extends Renders {
 		}
 	}
 
-	private Handler<HttpServerRequest> executeSecure(final String method) {
+	private Handler<HttpServerRequest> executeSecure(final String method, SanitizePolicy policy) {
+		final ActionType type = actionType(this.getClass().getName() + "|" + method);
 		try {
 			final MethodHandle mh = lookup.bind(this, method,
 					MethodType.methodType(void.class, HttpServerRequest.class));
-			return new SecurityHandler() {
+			return new SecurityHandler(type, policy) {
 
 				@Override
 				public void filter(HttpServerRequest request) {
@@ -223,10 +235,14 @@ public abstract class Controller extends Renders {
 		if (method == null || method.trim().isEmpty()) {
 			throw new NullPointerException();
 		}
+		SanitizePolicy policy = sanitizePolicies.get(method);
+		if (policy == null) {
+			policy = SanitizePolicy.ALL;
+		}
 		if (securedActions.containsKey(this.getClass().getName() + "|" + method)) {
-			return executeSecure(method);
+			return executeSecure(method, policy);
 		}
-		return execute(method);
+		return execute(method, policy);
 	}
 
 	public Map<String, Set<Binding>> getUriBinding() {
@@ -17,6 +17,7 @@
 package fr.wseduc.webutils;
 
 import java.io.UnsupportedEncodingException;
+import java.util.List;
 
 import org.vertx.java.core.AsyncResult;
 import org.vertx.java.core.Handler;
@@ -29,6 +30,7 @@ import org.vertx.java.core.http.HttpServerResponse;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 
+import fr.wseduc.webutils.http.ByteRange;
 import fr.wseduc.webutils.http.ETag;
 
 public class FileUtils {
@@ -177,6 +179,28 @@ public class FileUtils {
 	public static void gridfsSendFile(final String id, final String downloadName, final EventBus eb,
 			final String gridfsAddress, final HttpServerResponse response, final boolean inline,
 			final JsonObject metadata, final Handler<AsyncResult<Void>> resultHandler) {
+		gridfsSendFile(id, downloadName, eb, gridfsAddress, null, response, inline, metadata, resultHandler);
+	}
+
+	public static void gridfsSendFile(final String id, final String downloadName, final EventBus eb,
+			final String gridfsAddress, final HttpServerRequest request, final boolean inline,
+			final JsonObject metadata) {
+		gridfsSendFile(id, downloadName, eb, gridfsAddress, request, inline, metadata, null);
+	}
+
+	/*
+	 * Same as the response based version, but honours Range and If-Range request headers.
+	 */
+	public static void gridfsSendFile(final String id, final String downloadName, final EventBus eb,
+			final String gridfsAddress, final HttpServerRequest request, final boolean inline,
+			final JsonObject metadata, final Handler<AsyncResult<Void>> resultHandler) {
+		gridfsSendFile(id, downloadName, eb, gridfsAddress, request, request.response(), inline,
+				metadata, resultHandler);
+	}
+
+	private static void gridfsSendFile(final String id, final String downloadName, final EventBus eb,
+			final String gridfsAddress, final HttpServerRequest request, final HttpServerResponse response,
+			final boolean inline, final JsonObject metadata, final Handler<AsyncResult<Void>> resultHandler) {
 		gridfsReadFile(id, eb, gridfsAddress, new Handler<Buffer>() {
 			@Override
 			public void handle(Buffer file) {
@@ -210,10 +234,23 @@ public class FileUtils {
 				} else {
 					ETag.addHeader(response, id);
 				}
+				String contentType = null;
 				if (metadata != null && metadata.getString("content-type") != null) {
-					response.putHeader("Content-Type", metadata.getString("content-type"));
+					contentType = metadata.getString("content-type");
+					response.putHeader("Content-Type", contentType);
+				}
+				List<ByteRange> ranges = null;
+				if (request != null) {
+					response.putHeader("Accept-Ranges", "bytes");
+					ranges = ByteRange.requested(request, file.length(), inline ? ETag.of(id) : null, null);
+				}
+				if (ranges != null) {
+					// the gridfs bus protocol has no partial read, the range is cut from the fetched file
+					ByteRange.sendBuffer(response, file, ranges,
+							contentType != null ? contentType : "application/octet-stream");
+				} else {
+					response.end(file);
 				}
-				response.end(file);
 				if (resultHandler != null) {
 					resultHandler.handle(new DefaultAsyncResult<>((Void) null));
 				}
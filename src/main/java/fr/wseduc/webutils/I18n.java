@@ -17,12 +17,30 @@
 package fr.wseduc.webutils;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+import fr.wseduc.webutils.collections.LRUCache;
+import fr.wseduc.webutils.http.EncodedResponse;
+import fr.wseduc.webutils.i18n.LocaleResolver;
+import fr.wseduc.webutils.i18n.MessageBundle;
 import fr.wseduc.webutils.security.SecureHttpServerRequest;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.file.FileProps;
 import org.vertx.java.core.http.HttpServerRequest;
 import org.vertx.java.core.json.DecodeException;
 import org.vertx.java.core.json.JsonArray;
@@ -38,7 +56,151 @@ public class I18n {
 	private final static String messagesDir = "./i18n";
 	private final static Locale defaultLocale = Locale.FRENCH;
 	public final static String DEFAULT_DOMAIN = "default-domain";
-	private Map<String, Map<Locale, JsonObject>> messagesByDomains = new HashMap<>();
+	private static final long DEFAULT_RELOAD_INTERVAL = 2000l;
+	private static final int LOCALE_CACHE_SIZE = 1024;
+	private static final int RESPONSE_CACHE_SIZE = 1024;
+	private static final long RESPONSE_CACHE_MAX_MEMORY = 32 * 1024 * 1024;
+	private static final int VIEW_CACHE_SIZE = 16;
+	private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.empty());
+	private final AtomicBoolean watching = new AtomicBoolean(false);
+	private final LocaleResolver resolver = new LocaleResolver(LOCALE_CACHE_SIZE);
+	private final LRUCache<String, EncodedResponse> responses =
+			new LRUCache<String, EncodedResponse>(RESPONSE_CACHE_SIZE, RESPONSE_CACHE_MAX_MEMORY) {
+		@Override
+		protected long weigh(String key, EncodedResponse value) {
+			return value.weight();
+		}
+	};
+	/* flattened messages of the most used overlay bundles, bundles are immutable */
+	private final LRUCache<MessageBundle, JsonObject> views = new LRUCache<>(VIEW_CACHE_SIZE);
+	private volatile long responsesVersion;
+	private volatile Vertx vertx;
+	private volatile boolean lazy;
+	private volatile long maxMemory;
+	private final ConcurrentMap<Locale, Boolean> loading = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Locale, AtomicLong> lastUse = new ConcurrentHashMap<>();
+	private final AtomicLong loads = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/*
+	 * Immutable state of the messages : the files of the i18n directory by locale, the parsed
+	 * (resident) ones, the keys added by domain and the resulting bundles. Writers build a new
+	 * snapshot and publish it with a compare and set, readers never lock.
+	 * Domain bundles are overlays of the default domain bundles holding only the domain keys.
+	 */
+	private static final class Snapshot {
+
+		private final long version;
+		private final Map<Locale, String> index;
+		private final Map<Locale, JsonObject> files;
+		private final Map<Locale, Long> sizes;
+		private final Map<String, Map<Locale, JsonObject>> overrides;
+		private final Map<String, Map<Locale, MessageBundle>> domains;
+		private final Map<String, Set<Locale>> locales;
+
+		private Snapshot(long version, Map<Locale, String> index, Map<Locale, JsonObject> files,
+				Map<Locale, Long> sizes, Map<String, Map<Locale, JsonObject>> overrides,
+				Map<String, Map<Locale, MessageBundle>> domains, Map<String, Set<Locale>> locales) {
+			this.version = version;
+			this.index = index;
+			this.files = files;
+			this.sizes = sizes;
+			this.overrides = overrides;
+			this.domains = domains;
+			this.locales = locales;
+		}
+
+		private static Snapshot empty() {
+			return new Snapshot(0l, null, Collections.<Locale, JsonObject>emptyMap(),
+					Collections.<Locale, Long>emptyMap(), Collections.<String, Map<Locale, JsonObject>>emptyMap(),
+					Collections.<String, Map<Locale, MessageBundle>>emptyMap(),
+					Collections.<String, Set<Locale>>emptyMap());
+		}
+
+		private Map<Locale, MessageBundle> bundles(String domain) {
+			Map<Locale, MessageBundle> messages = domains.get(domain);
+			if (messages == null) {
+				messages = domains.get(DEFAULT_DOMAIN);
+			}
+			return messages;
+		}
+
+		/*
+		 * Locales available for the domain, including the files not parsed yet.
+		 */
+		private Set<Locale> locales(String domain) {
+			Set<Locale> l = locales.get(domain);
+			if (l == null) {
+				l = locales.get(DEFAULT_DOMAIN);
+			}
+			return l != null ? l : Collections.<Locale>emptySet();
+		}
+
+		private Snapshot withFiles(Map<Locale, String> index, Map<Locale, JsonObject> files,
+				Map<Locale, Long> sizes) {
+			return build(index, files, sizes, overrides, null);
+		}
+
+		private Snapshot withOverrides(String domain, Map<String, Map<Locale, JsonObject>> overrides) {
+			return build(index, files, sizes, overrides, DEFAULT_DOMAIN.equals(domain) ? null : domain);
+		}
+
+		/*
+		 * Rebuilds the bundles of one domain, or of all domains when the default domain changes.
+		 * Keys added for a locale whose file isn't parsed yet wait for the file.
+		 */
+		private Snapshot build(Map<Locale, String> index, Map<Locale, JsonObject> files, Map<Locale, Long> sizes,
+				Map<String, Map<Locale, JsonObject>> overrides, String domain) {
+			final Map<String, Map<Locale, MessageBundle>> d = new HashMap<>();
+			final Map<String, Set<Locale>> l = new HashMap<>();
+			if (domain != null) {
+				d.putAll(domains);
+				l.putAll(locales);
+				put(domain, merge(d.get(DEFAULT_DOMAIN), overrides.get(domain), true, index, files), index, d, l);
+			} else if (index != null) {
+				final Map<Locale, MessageBundle> defaults = new HashMap<>();
+				for (Map.Entry<Locale, JsonObject> e : files.entrySet()) {
+					defaults.put(e.getKey(), new MessageBundle(e.getValue()));
+				}
+				put(DEFAULT_DOMAIN, merge(defaults, overrides.get(DEFAULT_DOMAIN), false, index, files), index, d, l);
+				for (String name : overrides.keySet()) {
+					if (!DEFAULT_DOMAIN.equals(name)) {
+						put(name, merge(d.get(DEFAULT_DOMAIN), overrides.get(name), true, index, files), index, d, l);
+					}
+				}
+			}
+			return new Snapshot(version + 1, index, files, sizes, overrides,
+					Collections.unmodifiableMap(d), Collections.unmodifiableMap(l));
+		}
+
+		private static void put(String domain, Map<Locale, MessageBundle> messages, Map<Locale, String> index,
+				Map<String, Map<Locale, MessageBundle>> d, Map<String, Set<Locale>> l) {
+			final Set<Locale> available = new HashSet<>(messages.keySet());
+			available.addAll(index.keySet());
+			d.put(domain, messages);
+			l.put(domain, Collections.unmodifiableSet(available));
+		}
+
+		private static Map<Locale, MessageBundle> merge(Map<Locale, MessageBundle> defaults,
+				Map<Locale, JsonObject> keys, boolean overlay, Map<Locale, String> index,
+				Map<Locale, JsonObject> files) {
+			final Map<Locale, MessageBundle> messages = new HashMap<>(defaults);
+			if (keys != null) {
+				for (Map.Entry<Locale, JsonObject> e : keys.entrySet()) {
+					MessageBundle m = messages.get(e.getKey());
+					if (m == null) {
+						if (index.containsKey(e.getKey()) && !files.containsKey(e.getKey())) continue;
+						m = new MessageBundle(e.getValue());
+					} else {
+						m = overlay ? m.overlay(e.getValue()) : m.merge(e.getValue());
+					}
+					messages.put(e.getKey(), m);
+				}
+			}
+			return Collections.unmodifiableMap(messages);
+		}
+
+	}
 
 	private I18n(){}
 
@@ -50,21 +212,39 @@ public class I18n {
 		return I18nHolder.instance;
 	}
 
+	/*
+	 * With "i18n-lazy", only the default locale file is parsed at start, the other ones
+	 * are parsed asynchronously on first use. "i18n-max-memory" (bytes of json) evicts the
+	 * least recently used locales, the default locale is never evicted.
+	 */
 	public void init(Container container, Vertx vertx) {
 		try {
+			final JsonObject config = container.config();
+			if (this.vertx == null) {
+				this.vertx = vertx;
+			}
+			lazy = config.getBoolean("i18n-lazy", false);
+			maxMemory = config.getLong("i18n-max-memory", 0l);
 			if (vertx.fileSystem().existsSync(messagesDir)) {
-				Map<Locale, JsonObject> messages = messagesByDomains.get(DEFAULT_DOMAIN);
-				if (messages == null) {
-					messages = new HashMap<>();
-					messagesByDomains.put(DEFAULT_DOMAIN, messages);
-				}
+				final Map<Locale, String> index = new HashMap<>();
+				final Map<Locale, JsonObject> files = new HashMap<>();
+				final Map<Locale, Long> sizes = new HashMap<>();
 				for(String path : vertx.fileSystem().readDirSync(messagesDir)) {
 					if (vertx.fileSystem().propsSync(path).isRegularFile()) {
-						Locale l = Locale.forLanguageTag(new File(path).getName().split("\\.")[0]);
-						JsonObject jo = new JsonObject(vertx.fileSystem().readFileSync(path).toString());
-						messages.put(l,jo);
+						Locale l = localeOf(path);
+						index.put(l, path);
+						if (!lazy || defaultLocale.equals(l)) {
+							Buffer content = vertx.fileSystem().readFileSync(path);
+							files.put(l, new JsonObject(content.toString()));
+							sizes.put(l, (long) content.length());
+						}
 					}
 				}
+				updateFiles(index, files, sizes, null, true);
+				if (config.getBoolean("i18n-reload", "dev".equals(config.getString("mode"))) &&
+						watching.compareAndSet(false, true)) {
+					new Watcher(vertx).start(config.getLong("i18n-reload-interval", DEFAULT_RELOAD_INTERVAL));
+				}
 			} else {
 				log.warn("I18n directory " + messagesDir + " doesn't exist.");
 			}
@@ -73,8 +253,273 @@ public class I18n {
 		}
 	}
 
+	private static Locale localeOf(String path) {
+		return Locale.forLanguageTag(new File(path).getName().split("\\.")[0]);
+	}
+
+	/*
+	 * Publishes a snapshot with the given files. With replace, the index and the parsed files
+	 * are replaced, otherwise they are updated.
+	 */
+	private void updateFiles(Map<Locale, String> index, Map<Locale, JsonObject> files, Map<Locale, Long> sizes,
+			Set<Locale> removed, boolean replace) {
+		Snapshot current, next;
+		List<Locale> evicted;
+		do {
+			current = snapshot.get();
+			final Map<Locale, String> i = new HashMap<>(index);
+			final Map<Locale, JsonObject> f = new HashMap<>();
+			final Map<Locale, Long> s = new HashMap<>();
+			if (!replace && current.index != null) {
+				i.putAll(current.index);
+				i.putAll(index);
+				f.putAll(current.files);
+				s.putAll(current.sizes);
+			}
+			if (removed != null) {
+				for (Locale l : removed) {
+					i.remove(l);
+					f.remove(l);
+					s.remove(l);
+				}
+			}
+			f.putAll(files);
+			s.putAll(sizes);
+			evicted = evict(f, s, files.keySet());
+			next = current.withFiles(Collections.unmodifiableMap(i), Collections.unmodifiableMap(f),
+					Collections.unmodifiableMap(s));
+		} while (!snapshot.compareAndSet(current, next));
+		final long now = System.currentTimeMillis();
+		for (Locale l : files.keySet()) {
+			lastUse.put(l, new AtomicLong(now));
+		}
+		for (Locale l : evicted) {
+			lastUse.remove(l);
+		}
+		if (!evicted.isEmpty()) {
+			evictions.addAndGet(evicted.size());
+			log.info("I18n locales evicted : " + evicted);
+		}
+	}
+
+	/*
+	 * Removes the least recently used locales while the parsed files exceed the memory budget.
+	 */
+	private List<Locale> evict(Map<Locale, JsonObject> files, Map<Locale, Long> sizes, Set<Locale> keep) {
+		final List<Locale> evicted = new ArrayList<>();
+		final long max = maxMemory;
+		if (max <= 0) {
+			return evicted;
+		}
+		long total = 0l;
+		for (Locale l : files.keySet()) {
+			total += sizes.containsKey(l) ? sizes.get(l) : 0l;
+		}
+		while (total > max) {
+			Locale cold = null;
+			long coldUse = Long.MAX_VALUE;
+			for (Locale l : files.keySet()) {
+				if (defaultLocale.equals(l) || keep.contains(l)) continue;
+				AtomicLong use = lastUse.get(l);
+				long u = (use != null) ? use.get() : 0l;
+				if (u < coldUse) {
+					cold = l;
+					coldUse = u;
+				}
+			}
+			if (cold == null) break;
+			files.remove(cold);
+			total -= sizes.containsKey(cold) ? sizes.remove(cold) : 0l;
+			evicted.add(cold);
+		}
+		return evicted;
+	}
+
+	/*
+	 * Locale of the bundle to use : the requested one if it is parsed, the default one otherwise.
+	 * A locale file not parsed yet is loaded in background.
+	 */
+	private Locale residentLocale(Snapshot s, Map<Locale, MessageBundle> messages, Locale locale) {
+		if (s.index != null && s.index.containsKey(locale)) {
+			if (s.files.containsKey(locale)) {
+				AtomicLong use = lastUse.get(locale);
+				if (use != null) {
+					use.lazySet(System.currentTimeMillis());
+				}
+			} else {
+				load(locale, s.index.get(locale));
+			}
+		}
+		if (messages.get(locale) != null) {
+			return locale;
+		}
+		return messages.get(defaultLocale) != null ? defaultLocale : null;
+	}
+
+	private void load(final Locale locale, final String path) {
+		final Vertx v = vertx;
+		if (v == null || loading.putIfAbsent(locale, Boolean.TRUE) != null) {
+			return;
+		}
+		try {
+			v.fileSystem().readFile(path, new Handler<AsyncResult<Buffer>>() {
+				@Override
+				public void handle(AsyncResult<Buffer> ar) {
+					try {
+						JsonObject messages = null;
+						if (ar.succeeded()) {
+							try {
+								messages = new JsonObject(ar.result().toString());
+							} catch (DecodeException e) {
+								log.error("Invalid i18n file " + path, e);
+							}
+						} else {
+							log.error("Error loading i18n file " + path, ar.cause());
+						}
+						if (messages != null) {
+							updateFiles(Collections.<Locale, String>emptyMap(), Collections.singletonMap(locale, messages),
+									Collections.singletonMap(locale, (long) ar.result().length()), null, false);
+							loads.incrementAndGet();
+						} else {
+							// the locale is removed from the index to avoid loading it on each request
+							updateFiles(Collections.<Locale, String>emptyMap(), Collections.<Locale, JsonObject>emptyMap(),
+									Collections.<Locale, Long>emptyMap(), Collections.singleton(locale), false);
+						}
+					} finally {
+						loading.remove(locale);
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			loading.remove(locale);
+			log.error("Error loading i18n file " + path, e);
+		}
+	}
+
+	public JsonObject metrics() {
+		final Snapshot s = snapshot.get();
+		final JsonArray resident = new JsonArray();
+		long bytes = 0l;
+		for (Map.Entry<Locale, Long> e : s.sizes.entrySet()) {
+			resident.addString(e.getKey().toLanguageTag());
+			bytes += e.getValue();
+		}
+		return new JsonObject()
+				.putBoolean("lazy", lazy)
+				.putNumber("indexed", s.index != null ? s.index.size() : 0)
+				.putArray("resident", resident)
+				.putNumber("residentBytes", bytes)
+				.putNumber("maxMemory", maxMemory)
+				.putNumber("loads", loads.get())
+				.putNumber("evictions", evictions.get())
+				.putNumber("domains", s.domains.size())
+				.putNumber("version", s.version);
+	}
+
+	/*
+	 * Polls the i18n directory and reloads the modified files. All callbacks run on the
+	 * context of the verticle which started the watcher, one scan at a time.
+	 * In lazy mode, files not parsed yet are only indexed.
+	 */
+	private final class Watcher {
+
+		private final Vertx vertx;
+		private final Map<String, Long> stamps = new HashMap<>();
+		private boolean scanning;
+		private boolean initialized;
+
+		private Watcher(Vertx vertx) {
+			this.vertx = vertx;
+		}
+
+		private void start(long interval) {
+			vertx.setPeriodic(interval, new Handler<Long>() {
+				@Override
+				public void handle(Long timerId) {
+					if (!scanning) {
+						scanning = true;
+						scan();
+					}
+				}
+			});
+		}
+
+		private void scan() {
+			vertx.fileSystem().readDir(messagesDir, new Handler<AsyncResult<String[]>>() {
+				@Override
+				public void handle(AsyncResult<String[]> dir) {
+					if (dir.failed()) {
+						scanning = false;
+						return;
+					}
+					final Set<Locale> removed = new HashSet<>();
+					final Set<String> paths = new HashSet<>();
+					Collections.addAll(paths, dir.result());
+					for (String path : new HashSet<>(stamps.keySet())) {
+						if (!paths.contains(path)) {
+							stamps.remove(path);
+							removed.add(localeOf(path));
+						}
+					}
+					check(paths.toArray(new String[paths.size()]), 0, new HashMap<Locale, String>(),
+							new HashMap<Locale, JsonObject>(), new HashMap<Locale, Long>(), removed);
+				}
+			});
+		}
+
+		private void check(final String[] paths, final int idx, final Map<Locale, String> index,
+				final Map<Locale, JsonObject> changed, final Map<Locale, Long> sizes, final Set<Locale> removed) {
+			if (idx >= paths.length) {
+				if (initialized && (!index.isEmpty() || !removed.isEmpty())) {
+					updateFiles(index, changed, sizes, removed, false);
+					log.info("I18n reloaded : " + index.keySet() + " updated, " + removed + " removed.");
+				}
+				initialized = true;
+				scanning = false;
+				return;
+			}
+			final String path = paths[idx];
+			vertx.fileSystem().props(path, new Handler<AsyncResult<FileProps>>() {
+				@Override
+				public void handle(AsyncResult<FileProps> props) {
+					if (props.failed() || !props.result().isRegularFile()) {
+						check(paths, idx + 1, index, changed, sizes, removed);
+						return;
+					}
+					final long lastModified = props.result().lastModifiedTime().getTime();
+					final Long previous = stamps.put(path, lastModified);
+					if (!initialized || (previous != null && previous == lastModified)) {
+						check(paths, idx + 1, index, changed, sizes, removed);
+						return;
+					}
+					final Locale l = localeOf(path);
+					index.put(l, path);
+					if (lazy && !defaultLocale.equals(l) && !snapshot.get().files.containsKey(l)) {
+						check(paths, idx + 1, index, changed, sizes, removed);
+						return;
+					}
+					vertx.fileSystem().readFile(path, new Handler<AsyncResult<Buffer>>() {
+						@Override
+						public void handle(AsyncResult<Buffer> content) {
+							if (content.succeeded()) {
+								try {
+									changed.put(l, new JsonObject(content.result().toString()));
+									sizes.put(l, (long) content.result().length());
+								} catch (DecodeException e) {
+									log.error("Invalid i18n file " + path, e);
+								}
+							}
+							check(paths, idx + 1, index, changed, sizes, removed);
+						}
+					});
+				}
+			});
+		}
+
+	}
+
 	public String translate(String key, String domain, String acceptLanguage, String... args) {
-		return translate(key, domain, getLocale(acceptLanguage), args);
+		return translate(key, domain, resolveLocale(acceptLanguage, domain), args);
 	}
 
 	@Deprecated
@@ -83,33 +528,16 @@ public class I18n {
 	}
 
 	public String translate(String key, String domain, Locale locale, String... args) {
-		Map<Locale, JsonObject> messages = getMessagesMap(domain);
+		final Snapshot s = snapshot.get();
+		Map<Locale, MessageBundle> messages = s.bundles(domain);
 		if (messages == null) {
 			return key;
 		}
-		JsonObject bundle = messages.get(locale) != null ? messages.get(locale) : messages.get(defaultLocale);
-		if (bundle == null) {
+		Locale l = residentLocale(s, messages, locale);
+		if (l == null) {
 			return key;
 		}
-		String text =  bundle.getString(key) != null ? bundle.getString(key) : key;
-		if (args.length > 0) {
-			try {
-				for (int i = 0; i < args.length; i++) {
-					text = text.replaceAll("\\{" + i + "\\}", args[i]);
-				}
-			} catch (RuntimeException e) {
-				log.error("Error replacing i18n variable", e);
-			}
-		}
-		return text;
-	}
-
-	private Map<Locale, JsonObject> getMessagesMap(String domain) {
-		Map<Locale, JsonObject> messages = messagesByDomains.get(domain);
-		if (messages == null) {
-			messages = messagesByDomains.get(DEFAULT_DOMAIN);
-		}
-		return messages;
+		return messages.get(l).translate(key, args);
 	}
 
 	@Deprecated
@@ -117,48 +545,117 @@ public class I18n {
 		return load(acceptLanguage, DEFAULT_DOMAIN);
 	}
 
+	/*
+	 * Shared instance, must not be modified.
+	 */
 	public JsonObject load(String acceptLanguage, String domain) {
-		Map<Locale, JsonObject> messages = getMessagesMap(domain);
+		final Snapshot s = snapshot.get();
+		Map<Locale, MessageBundle> messages = s.bundles(domain);
 		if (messages == null) {
 			return new JsonObject();
 		}
-		Locale l = getLocale(acceptLanguage);
-		JsonObject bundle = messages.get(l) != null ? messages.get(l) : messages.get(defaultLocale);
-		if (bundle == null) {
-			bundle = messages.get(defaultLocale);
+		Locale l = residentLocale(s, messages, resolver.resolve(acceptLanguage, s.locales(domain), defaultLocale));
+		return l != null ? messages(messages.get(l)) : null;
+	}
+
+	/*
+	 * Encoded bundle of load(acceptLanguage, domain), cached by domain and locale
+	 * until the messages change. The default bundle served while the requested locale
+	 * loads is neither cached nor tagged.
+	 */
+	public EncodedResponse loadResponse(String acceptLanguage, String domain) {
+		final Snapshot s = snapshot.get();
+		final String d = s.domains.containsKey(domain) ? domain : DEFAULT_DOMAIN;
+		final Map<Locale, MessageBundle> messages = s.domains.get(d);
+		Locale l = null;
+		if (messages != null) {
+			Locale requested = resolver.resolve(acceptLanguage, s.locales(d), defaultLocale);
+			l = residentLocale(s, messages, requested);
+			if (l != null && !l.equals(requested)) {
+				return EncodedResponse.noStore(messages(messages.get(l)).encode());
+			}
 		}
-		return bundle;
+		final String key = s.version + "|" + d + "|" + (l != null ? l.toLanguageTag() : "");
+		EncodedResponse r = cachedResponse(s, key);
+		if (r == null) {
+			r = EncodedResponse.json(l != null ? messages(messages.get(l)).encode() : "{}");
+			responses.put(key, r);
+		}
+		return r;
 	}
 
-	/* Dummy implementation. Just use the first langage option ...
-	 * Header example : "Accept-Language:fr,en-us;q=0.8,fr-fr;q=0.5,en;q=0.3"
+	/*
+	 * Encoded getLanguages(domain), cached until the messages change.
 	 */
-	private Locale getLocale(String acceptLanguage) {
-		if (acceptLanguage == null) {
-			acceptLanguage = "fr";
+	public EncodedResponse languagesResponse(String domain) {
+		final Snapshot s = snapshot.get();
+		final String d = s.domains.containsKey(domain) ? domain : DEFAULT_DOMAIN;
+		final String key = s.version + "|" + d + "|languages";
+		EncodedResponse r = cachedResponse(s, key);
+		if (r == null) {
+			r = EncodedResponse.json(getLanguages(s, d).encode());
+			responses.put(key, r);
+		}
+		return r;
+	}
+
+	private JsonObject messages(MessageBundle bundle) {
+		if (!bundle.isOverlay()) {
+			return bundle.getMessages();
+		}
+		JsonObject m = views.get(bundle);
+		if (m == null) {
+			m = bundle.getMessages();
+			views.put(bundle, m);
 		}
-		String[] langs = acceptLanguage.split(",");
-		return Locale.forLanguageTag(langs[0].split("-")[0]);
+		return m;
+	}
+
+	private EncodedResponse cachedResponse(Snapshot s, String key) {
+		if (s.version > responsesVersion) {
+			// entries of previous versions are never read again
+			responsesVersion = s.version;
+			responses.clear();
+			views.clear();
+		}
+		return responses.get(key);
+	}
+
+	/*
+	 * Best locale of the domain for an Accept-Language header, or the default locale.
+	 * Header example : "Accept-Language:fr,en-us;q=0.8,fr-fr;q=0.5,en;q=0.3"
+	 */
+	public Locale resolveLocale(String acceptLanguage, String domain) {
+		return resolver.resolve(acceptLanguage, snapshot.get().locales(domain), defaultLocale);
 	}
 
 	public static String acceptLanguage(HttpServerRequest request) {
-		final String acceptLanguage = request.headers().get("Accept-Language") != null ?
-				request.headers().get("Accept-Language") : "fr";
 		if (request instanceof SecureHttpServerRequest) {
-			JsonObject session = ((SecureHttpServerRequest) request).getSession();
-			if (session != null && session.getObject("cache") != null &&
-					session.getObject("cache").getObject("preferences") != null &&
-					Utils.isNotEmpty(session.getObject("cache").getObject("preferences").getString("language"))) {
-				try {
-					JsonObject language = new JsonObject(session.getObject("cache").getObject("preferences")
-							.getString("language"));
-					return language.getString(DEFAULT_DOMAIN, acceptLanguage);
-				} catch (DecodeException e) {
-					log.error("Error getting language in cache.", e);
-				}
+			String language = ((SecureHttpServerRequest) request).getLanguage();
+			if (language != null) {
+				return language;
 			}
 		}
-		return acceptLanguage;
+		final String acceptLanguage = request.headers().get("Accept-Language");
+		return acceptLanguage != null ? acceptLanguage : "fr";
+	}
+
+	/*
+	 * Language of the session preferences ("cache.preferences.language") for the default domain.
+	 */
+	public static String preferredLanguage(JsonObject session) {
+		if (session != null && session.getObject("cache") != null &&
+				session.getObject("cache").getObject("preferences") != null &&
+				Utils.isNotEmpty(session.getObject("cache").getObject("preferences").getString("language"))) {
+			try {
+				JsonObject language = new JsonObject(session.getObject("cache").getObject("preferences")
+						.getString("language"));
+				return language.getString(DEFAULT_DOMAIN);
+			} catch (DecodeException e) {
+				log.error("Error getting language in cache.", e);
+			}
+		}
+		return null;
 	}
 
 	@Deprecated
@@ -167,32 +664,28 @@ public class I18n {
 	}
 
 	public void add(String domain, Locale locale, JsonObject keys) {
-		Map<Locale, JsonObject> messages = messagesByDomains.get(domain);
-		if (messages == null) {
-			HashMap<Locale, JsonObject> defaultMessages = (HashMap<Locale, JsonObject>)
-					messagesByDomains.get(DEFAULT_DOMAIN);
-			if (defaultMessages == null) return;
-			messages = new HashMap<Locale, JsonObject>();
-			for(Locale l : defaultMessages.keySet()){
-				messages.put(l, defaultMessages.get(l).copy());
-			}
-			messagesByDomains.put(domain, messages);
-		}
-		JsonObject m = messages.get(locale);
-		if (m == null) {
-			messages.put(locale, keys);
-		} else {
-			m.mergeIn(keys);
-		}
+		Snapshot current, next;
+		do {
+			current = snapshot.get();
+			if (current.index == null) return;
+			final Map<String, Map<Locale, JsonObject>> overrides = new HashMap<>(current.overrides);
+			final Map<Locale, JsonObject> o = (overrides.get(domain) != null) ?
+					new HashMap<>(overrides.get(domain)) : new HashMap<Locale, JsonObject>();
+			final JsonObject m = o.get(locale);
+			o.put(locale, (m == null) ? keys.copy() : m.copy().mergeIn(keys));
+			overrides.put(domain, Collections.unmodifiableMap(o));
+			next = current.withOverrides(domain, Collections.unmodifiableMap(overrides));
+		} while (!snapshot.compareAndSet(current, next));
 	}
 
 	public JsonArray getLanguages(String domain) {
-		final Map<Locale, JsonObject> messages = getMessagesMap(domain);
+		return getLanguages(snapshot.get(), domain);
+	}
+
+	private static JsonArray getLanguages(Snapshot s, String domain) {
 		final JsonArray languages = new JsonArray();
-		if (messages != null) {
-			for (Locale l : messages.keySet()) {
-				languages.addString(l.getLanguage());
-			}
+		for (Locale l : s.locales(domain)) {
+			languages.addString(l.getLanguage());
 		}
 		return languages;
 	}
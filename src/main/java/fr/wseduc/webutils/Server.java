@@ -18,9 +18,10 @@ package fr.wseduc.webutils;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentMap;
 
 import fr.wseduc.vertx.eventbus.EventBusWrapperFactory;
+import fr.wseduc.webutils.http.AssetBundles;
+import fr.wseduc.webutils.http.AssetManifest;
 import fr.wseduc.webutils.http.BaseController;
 import fr.wseduc.webutils.http.Binding;
 import fr.wseduc.webutils.http.Renders;
@@ -28,13 +29,11 @@ import fr.wseduc.webutils.logging.Tracer;
 import fr.wseduc.webutils.logging.TracerFactory;
 import fr.wseduc.webutils.request.filter.Filter;
 import fr.wseduc.webutils.request.filter.SecurityHandler;
-import org.vertx.java.core.AsyncResult;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.MultiMap;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.VoidHandler;
 import org.vertx.java.core.eventbus.EventBus;
-import org.vertx.java.core.file.FileProps;
 import org.vertx.java.core.http.HttpServerRequest;
 import org.vertx.java.core.http.RouteMatcher;
 import org.vertx.java.core.json.JsonArray;
@@ -44,6 +43,7 @@ import org.vertx.java.platform.Verticle;
 
 import fr.wseduc.webutils.http.StaticResource;
 import fr.wseduc.webutils.request.CookieHelper;
+import fr.wseduc.webutils.security.BCrypt;
 import fr.wseduc.webutils.security.SecuredAction;
 
 public abstract class Server extends Verticle {
@@ -55,7 +55,6 @@ public abstract class Server extends Verticle {
 	private I18n i18n;
 	protected Map<String, SecuredAction> securedActions;
 	protected Set<Binding> securedUriBinding = new HashSet<>();
-	private ConcurrentMap<String, String> staticRessources;
 	private boolean dev;
 
 	@Override
@@ -73,45 +72,31 @@ public abstract class Server extends Verticle {
 		i18n.init(container, vertx);
 		CookieHelper.getInstance().init((String) vertx
 				.sharedData().getMap("server").get("signKey"), log);
-		staticRessources = vertx.sharedData().getMap("staticRessources");
 		dev = "dev".equals(config.getString("mode"));
 
 		log.info("Verticle: " + this.getClass().getSimpleName() + " starts on port: " + config.getInteger("port"));
 
 		final String prefix = getPathPrefix(config);
+		BCrypt.configurePool(config.getInteger("bcrypt-threads", BCrypt.DEFAULT_POOL_THREADS),
+				config.getInteger("bcrypt-queue", BCrypt.DEFAULT_POOL_QUEUE));
+		if (!dev) {
+			StaticResource.configureIndex(config.getInteger("static-index-max-entries", 20000),
+					config.getLong("static-index-max-memory", 16 * 1024 * 1024));
+			AssetManifest.build(vertx, prefix);
+		}
 		// Serve public static resource like img, css, js. By convention in /public directory
 		// Dummy impl
 		rm.getWithRegEx(prefix.replaceAll("\\/", "\\/") + "\\/public\\/.+",
 				new Handler<HttpServerRequest>() {
 			public void handle(final HttpServerRequest request) {
-				if (dev) {
-					request.response().sendFile("." + request.path().substring(prefix.length()));
-				} else {
-					if (staticRessources.containsKey(request.uri())) {
-						StaticResource.serveRessource(request,
-								"." + request.path().substring(prefix.length()),
-								staticRessources.get(request.uri()), dev);
-					} else {
-						vertx.fileSystem().props("." + request.path().substring(prefix.length()),
-								new Handler<AsyncResult<FileProps>>(){
-							@Override
-							public void handle(AsyncResult<FileProps> af) {
-								if (af.succeeded()) {
-									String lastModified = StaticResource.formatDate(af.result().lastModifiedTime());
-									staticRessources.put(request.uri(), lastModified);
-									StaticResource.serveRessource(request,
-											"." + request.path().substring(prefix.length()),
-											lastModified, dev);
-								} else {
-									request.response().sendFile("." + request.path().substring(prefix.length()));
-								}
-							}
-						});
-					}
-				}
+				StaticResource.serveRessource(vertx, request,
+						"." + request.path().substring(prefix.length()), dev);
 			}
 		});
 
+		AssetBundles.build(vertx, dev);
+		rm.getWithRegEx(prefix.replaceAll("\\/", "\\/") + "\\/bundle\\/.+", AssetBundles.handler(vertx, prefix));
+
 		rm.get(prefix + "/i18n", new Handler<HttpServerRequest>() {
 			@Override
 			public void handle(HttpServerRequest request) {
@@ -122,7 +107,7 @@ public abstract class Server extends Verticle {
 		rm.get(prefix + "/languages", new Handler<HttpServerRequest>() {
 			@Override
 			public void handle(HttpServerRequest request) {
-				Controller.renderJson(request, i18n.getLanguages(Renders.getHost(request)));
+				i18n.languagesResponse(Renders.getHost(request)).render(request);
 			}
 		});
 
@@ -159,8 +144,7 @@ public abstract class Server extends Verticle {
 	}
 
 	protected void i18nMessages(HttpServerRequest request) {
-		Controller.renderJson(request, i18n.load(
-				I18n.acceptLanguage(request), Renders.getHost(request)));
+		i18n.loadResponse(I18n.acceptLanguage(request), Renders.getHost(request)).render(request);
 	}
 
 	/**
@@ -0,0 +1,106 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.wseduc.webutils.collections;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Thread safe least recently used cache, bounded by a number of entries
+ * and optionally by a total weight (ex : an estimated size in bytes).
+ */
+public class LRUCache<K, V> {
+
+	private final LinkedHashMap<K, V> map = new LinkedHashMap<>(16, 0.75f, true);
+	private final int maxEntries;
+	private final long maxWeight;
+	private long weight;
+	private long evictions;
+
+	public LRUCache(int maxEntries) {
+		this(maxEntries, -1);
+	}
+
+	public LRUCache(int maxEntries, long maxWeight) {
+		this.maxEntries = maxEntries;
+		this.maxWeight = maxWeight;
+	}
+
+	public synchronized V get(K key) {
+		return map.get(key);
+	}
+
+	public synchronized V put(K key, V value) {
+		V old = map.put(key, value);
+		if (old != null) {
+			weight -= weigh(key, old);
+		}
+		weight += weigh(key, value);
+		evict();
+		return old;
+	}
+
+	public synchronized V putIfAbsent(K key, V value) {
+		V old = map.get(key);
+		if (old != null) {
+			return old;
+		}
+		put(key, value);
+		return null;
+	}
+
+	public synchronized V remove(K key) {
+		V old = map.remove(key);
+		if (old != null) {
+			weight -= weigh(key, old);
+		}
+		return old;
+	}
+
+	public synchronized void clear() {
+		map.clear();
+		weight = 0;
+	}
+
+	public synchronized int size() {
+		return map.size();
+	}
+
+	public synchronized long weight() {
+		return weight;
+	}
+
+	public synchronized long evictions() {
+		return evictions;
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<K, V>> it = map.entrySet().iterator();
+		while (it.hasNext() && (map.size() > maxEntries || (maxWeight > 0 && weight > maxWeight))) {
+			Map.Entry<K, V> eldest = it.next();
+			weight -= weigh(eldest.getKey(), eldest.getValue());
+			it.remove();
+			evictions++;
+		}
+	}
+
+	protected long weigh(K key, V value) {
+		return 1l;
+	}
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.wseduc.webutils.collections;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Bounded least recently used cache whose entries expire after a time to live.
+ * Expired entries are removed when they are read or evicted by newer ones.
+ * Entries are spread over stripes locked independently, each stripe is bounded
+ * by its share of the entries.
+ */
+public class TTLCache<K, V> {
+
+	private static final class Entry<V> {
+
+		private final V value;
+		private final long expires;
+
+		private Entry(V value, long expires) {
+			this.value = value;
+			this.expires = expires;
+		}
+
+	}
+
+	private static final int STRIPES = 16;
+	private final List<LRUCache<K, Entry<V>>> stripes;
+	private final long ttl;
+
+	/*
+	 * @param ttl default time to live in milliseconds
+	 */
+	public TTLCache(int maxEntries, long ttl) {
+		final int n = Math.max(1, Math.min(STRIPES, maxEntries));
+		this.stripes = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			stripes.add(new LRUCache<K, Entry<V>>(maxEntries / n));
+		}
+		this.ttl = ttl;
+	}
+
+	private LRUCache<K, Entry<V>> stripe(Object key) {
+		final int h = key.hashCode();
+		return stripes.get(((h ^ (h >>> 16)) & 0x7fffffff) % stripes.size());
+	}
+
+	public V get(K key) {
+		final LRUCache<K, Entry<V>> cache = stripe(key);
+		Entry<V> e = cache.get(key);
+		if (e == null) {
+			return null;
+		}
+		if (e.expires < System.currentTimeMillis()) {
+			cache.remove(key);
+			return null;
+		}
+		return e.value;
+	}
+
+	public void put(K key, V value) {
+		put(key, value, ttl);
+	}
+
+	public void put(K key, V value, long ttl) {
+		if (ttl > 0) {
+			stripe(key).put(key, new Entry<>(value, System.currentTimeMillis() + ttl));
+		}
+	}
+
+	public V remove(K key) {
+		Entry<V> e = stripe(key).remove(key);
+		return e != null ? e.value : null;
+	}
+
+	public void clear() {
+		for (LRUCache<K, Entry<V>> cache : stripes) {
+			cache.clear();
+		}
+	}
+
+	public int size() {
+		int size = 0;
+		for (LRUCache<K, Entry<V>> cache : stripes) {
+			size += cache.size();
+		}
+		return size;
+	}
+
+	public long getTtl() {
+		return ttl;
+	}
+
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.wseduc.webutils.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import fr.wseduc.webutils.security.CryptoPool;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.core.logging.impl.LoggerFactory;
+
+/*
+ * Js and css bundles described in the module ./bundles.json file :
+ * { "app.js" : ["js/a.js", "js/b.js"], "app.css" : ["css/a.css", "css/b.css"] }
+ * Paths are relative to the public directory. Bundles are concatenated on a background thread
+ * when the first verticle instance starts, css is minified, and they are served from memory
+ * at <prefix>/bundle/<name>. Relative css urls are rewritten for this location.
+ * In dev mode, and until a bundle is built, bundles are concatenated again on each request.
+ */
+public class AssetBundles {
+
+	private static final Logger log = LoggerFactory.getLogger(AssetBundles.class);
+	private static final String MANIFEST = "./bundles.json";
+	private static final String PUBLIC_DIR = "./public/";
+	private static final Pattern CSS_URL = Pattern.compile("url\\(\\s*(['\"]?)([^'\")]+)\\1\\s*\\)");
+	private static final ConcurrentMap<String, Bundle> bundles = new ConcurrentHashMap<>();
+	private static final AtomicBoolean started = new AtomicBoolean(false);
+	private static volatile JsonObject manifest;
+
+	private static final class Bundle {
+
+		private final byte[] content;
+		private final String hash;
+		private final String etag;
+		private final String contentType;
+
+		private Bundle(byte[] content, String hash, String contentType) {
+			this.content = content;
+			this.hash = hash;
+			this.etag = "\"" + hash + "\"";
+			this.contentType = contentType;
+		}
+
+	}
+
+	/*
+	 * Reads the manifest and builds the bundles off the event loop, once per module : verticle
+	 * instances of a module share the bundles, published one by one when they are ready.
+	 */
+	public static void build(final Vertx vertx, final boolean devMode) {
+		if (!started.compareAndSet(false, true)) {
+			return;
+		}
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				build(devMode);
+			}
+		}, "asset-bundles");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	private static void build(boolean devMode) {
+		final JsonObject m;
+		try {
+			if (!Files.exists(Paths.get(MANIFEST))) {
+				return;
+			}
+			m = new JsonObject(new String(Files.readAllBytes(Paths.get(MANIFEST)), StandardCharsets.UTF_8));
+		} catch (IOException | RuntimeException e) {
+			log.error("Invalid bundles manifest " + MANIFEST, e);
+			return;
+		}
+		manifest = m;
+		if (devMode) {
+			return;
+		}
+		for (String name : m.getFieldNames()) {
+			final JsonArray files = m.getArray(name);
+			if (files == null) continue;
+			try {
+				Bundle b = concat(name, files);
+				bundles.put(name, b);
+				log.info("Bundle " + name + " built : " + b.content.length + " bytes.");
+			} catch (NoSuchAlgorithmException | RuntimeException e) {
+				log.error("Error building bundle " + name, e);
+			}
+		}
+	}
+
+	/*
+	 * Unreadable files are logged and left out, the bundle keeps the other files.
+	 */
+	private static Bundle concat(String name, JsonArray files) throws NoSuchAlgorithmException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (Object f : files) {
+			try {
+				append(out, name, f.toString(), Files.readAllBytes(Paths.get(PUBLIC_DIR + f)));
+			} catch (IOException e) {
+				log.error("Error reading " + f + " of bundle " + name, e);
+			}
+		}
+		return bundle(name, out.toByteArray());
+	}
+
+	private static Bundle bundle(String name, byte[] content) throws NoSuchAlgorithmException {
+		String hash = CryptoPool.hex(MessageDigest.getInstance("MD5").digest(content));
+		return new Bundle(content, hash, StaticResource.contentType(name));
+	}
+
+	private static void append(ByteArrayOutputStream out, String name, String file, byte[] content)
+			throws IOException {
+		if (name.endsWith(".css")) {
+			String css = rewriteUrls(new String(content, StandardCharsets.UTF_8), name, file);
+			out.write(minifyCss(css).getBytes(StandardCharsets.UTF_8));
+			out.write('\n');
+		} else {
+			// scripts are only concatenated, a statement separator protects files without final semicolon
+			out.write(content);
+			out.write(";\n".getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	/*
+	 * Relative urls of a css file of the public directory, rewritten relative to the
+	 * bundle url (<prefix>/bundle/<name>).
+	 */
+	static String rewriteUrls(String css, String name, String file) {
+		final StringBuilder up = new StringBuilder("../");
+		for (int i = 0; i < name.length(); i++) {
+			if (name.charAt(i) == '/') {
+				up.append("../");
+			}
+		}
+		final int dirIdx = file.lastIndexOf('/');
+		final String dir = (dirIdx < 0) ? "" : file.substring(0, dirIdx + 1);
+		final Matcher m = CSS_URL.matcher(css);
+		final StringBuffer sb = new StringBuffer(css.length());
+		while (m.find()) {
+			String url = m.group(2).trim();
+			if (url.startsWith("/") || url.startsWith("#") || url.startsWith("data:") ||
+					url.matches("^[a-zA-Z][a-zA-Z0-9+.-]*:.*")) {
+				m.appendReplacement(sb, Matcher.quoteReplacement(m.group()));
+			} else {
+				m.appendReplacement(sb, Matcher.quoteReplacement("url(" + m.group(1) + up + "public/" +
+						normalize(dir + url) + m.group(1) + ")"));
+			}
+		}
+		m.appendTail(sb);
+		return sb.toString();
+	}
+
+	private static String normalize(String path) {
+		final Deque<String> segments = new ArrayDeque<>();
+		for (String segment : path.split("/", -1)) {
+			if (segment.equals("..")) {
+				if (!segments.isEmpty()) {
+					segments.removeLast();
+				}
+			} else if (!segment.equals(".")) {
+				segments.addLast(segment);
+			}
+		}
+		final StringBuilder sb = new StringBuilder();
+		for (String segment : segments) {
+			if (sb.length() > 0) sb.append('/');
+			sb.append(segment);
+		}
+		return sb.toString();
+	}
+
+	/*
+	 * Removes comments and collapses whitespaces outside strings.
+	 */
+	static String minifyCss(String css) {
+		final StringBuilder sb = new StringBuilder(css.length());
+		final int len = css.length();
+		boolean space = false;
+		for (int i = 0; i < len; i++) {
+			char c = css.charAt(i);
+			if (c == '/' && i + 1 < len && css.charAt(i + 1) == '*') {
+				int end = css.indexOf("*/", i + 2);
+				i = (end < 0) ? len : end + 1;
+				space = true;
+			} else if (c == '"' || c == '\'') {
+				if (space && sb.length() > 0 && !isCssDelimiter(sb.charAt(sb.length() - 1))) {
+					sb.append(' ');
+				}
+				space = false;
+				int j = i + 1;
+				while (j < len && css.charAt(j) != c) {
+					if (css.charAt(j) == '\\') j++;
+					j++;
+				}
+				sb.append(css, i, Math.min(j + 1, len));
+				i = j;
+			} else if (Character.isWhitespace(c)) {
+				space = true;
+			} else {
+				if (space && sb.length() > 0 && !isCssDelimiter(c) &&
+						!isCssDelimiter(sb.charAt(sb.length() - 1))) {
+					sb.append(' ');
+				}
+				space = false;
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static boolean isCssDelimiter(char c) {
+		return c == '{' || c == '}' || c == ';' || c == ',' || c == '>';
+	}
+
+	/*
+	 * Returns the fingerprinted path of a bundle (without fingerprint in dev mode or while
+	 * the bundle is built), or null if the bundle doesn't exist.
+	 */
+	public static String path(String pathPrefix, String name) {
+		Bundle b = bundles.get(name);
+		if (b != null) {
+			return pathPrefix + "/bundle/" + name + "?v=" + b.hash;
+		}
+		JsonObject m = manifest;
+		if (m != null && m.getArray(name) != null) {
+			return pathPrefix + "/bundle/" + name;
+		}
+		return null;
+	}
+
+	public static Handler<HttpServerRequest> handler(final Vertx vertx, final String pathPrefix) {
+		final int nameIdx = pathPrefix.length() + "/bundle/".length();
+		return new Handler<HttpServerRequest>() {
+			@Override
+			public void handle(final HttpServerRequest request) {
+				final String name = request.path().substring(nameIdx);
+				Bundle b = bundles.get(name);
+				JsonObject m = manifest;
+				if (b != null) {
+					send(request, b);
+				} else if (m != null && m.getArray(name) != null) {
+					concat(vertx, name, m.getArray(name), 0, new ByteArrayOutputStream(), request);
+				} else {
+					Renders.notFound(request);
+				}
+			}
+		};
+	}
+
+	private static void send(HttpServerRequest request, Bundle b) {
+		request.response().putHeader("ETag", b.etag);
+		if (b.hash.equals(request.params().get("v"))) {
+			request.response().putHeader("Cache-Control", StaticResource.IMMUTABLE);
+		}
+		if (StaticResource.matchETag(request.headers().get("If-None-Match"), b.etag)) {
+			Renders.notModified(request);
+			return;
+		}
+		request.response().putHeader("Content-Type", b.contentType);
+		request.response().end(new Buffer(b.content));
+	}
+
+	/*
+	 * Dev mode or bundle not built yet : files are read asynchronously one by one,
+	 * the bundle isn't kept.
+	 */
+	private static void concat(final Vertx vertx, final String name, final JsonArray files, final int idx,
+			final ByteArrayOutputStream out, final HttpServerRequest request) {
+		if (idx >= files.size()) {
+			try {
+				send(request, bundle(name, out.toByteArray()));
+			} catch (NoSuchAlgorithmException e) {
+				log.error("Error building bundle " + name, e);
+				Renders.renderError(request);
+			}
+			return;
+		}
+		final String file = files.get(idx).toString();
+		vertx.fileSystem().readFile(PUBLIC_DIR + file, new Handler<AsyncResult<Buffer>>() {
+			@Override
+			public void handle(AsyncResult<Buffer> ar) {
+				if (ar.succeeded()) {
+					try {
+						append(out, name, file, ar.result().getBytes());
+					} catch (IOException e) {
+						log.error("Error reading " + file + " of bundle " + name, e);
+					}
+				} else {
+					log.error("Error reading " + file + " of bundle " + name, ar.cause());
+				}
+				concat(vertx, name, files, idx + 1, out, request);
+			}
+		});
+	}
+
+}
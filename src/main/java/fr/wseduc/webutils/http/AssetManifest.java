@@ -0,0 +1,128 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.wseduc.webutils.http;
+
+import java.io.File;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.file.FileProps;
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.core.logging.impl.LoggerFactory;
+
+/*
+ * Content hash of each file under public/, published in the "assetsManifest" shared map
+ * with the public url path as key (ex : /workspace/public/js/app.js), so other modules
+ * (infra) can fingerprint urls too.
+ */
+public class AssetManifest {
+
+	private static final Logger log = LoggerFactory.getLogger(AssetManifest.class);
+	private static final String PUBLIC_DIR = "./public";
+	public static final String MAP_NAME = "assetsManifest";
+	private static final AtomicBoolean built = new AtomicBoolean(false);
+
+	/*
+	 * Built once per module : the first verticle instance walks the public directory,
+	 * the others share the same index and manifest.
+	 */
+	public static void build(final Vertx vertx, final String pathPrefix) {
+		if (!built.compareAndSet(false, true)) {
+			return;
+		}
+		final ConcurrentMap<String, String> manifest = vertx.sharedData().getMap(MAP_NAME);
+		final String root = new File(PUBLIC_DIR).getAbsolutePath();
+		final LinkedList<String> queue = new LinkedList<>();
+		queue.add(PUBLIC_DIR);
+		vertx.fileSystem().exists(PUBLIC_DIR, new Handler<AsyncResult<Boolean>>() {
+			@Override
+			public void handle(AsyncResult<Boolean> exists) {
+				if (exists.succeeded() && Boolean.TRUE.equals(exists.result())) {
+					next(vertx, root, pathPrefix, queue, manifest);
+				}
+			}
+		});
+	}
+
+	// files are processed one by one to avoid opening the whole directory at startup
+	private static void next(final Vertx vertx, final String root, final String pathPrefix,
+			final LinkedList<String> queue, final ConcurrentMap<String, String> manifest) {
+		final String path = queue.poll();
+		if (path == null) {
+			log.info("Asset manifest built for " + (pathPrefix.isEmpty() ? "/" : pathPrefix));
+			return;
+		}
+		vertx.fileSystem().props(path, new Handler<AsyncResult<FileProps>>() {
+			@Override
+			public void handle(AsyncResult<FileProps> props) {
+				if (props.failed()) {
+					next(vertx, root, pathPrefix, queue, manifest);
+				} else if (props.result().isDirectory()) {
+					vertx.fileSystem().readDir(path, new Handler<AsyncResult<String[]>>() {
+						@Override
+						public void handle(AsyncResult<String[]> dir) {
+							if (dir.succeeded()) {
+								for (String child : dir.result()) {
+									queue.add(child);
+								}
+							}
+							next(vertx, root, pathPrefix, queue, manifest);
+						}
+					});
+				} else if (props.result().isRegularFile()) {
+					StaticResource.loadMetadata(vertx, path, new Handler<AsyncResult<StaticResource.Metadata>>() {
+						@Override
+						public void handle(AsyncResult<StaticResource.Metadata> m) {
+							if (m.succeeded()) {
+								String relative = new File(path).getAbsolutePath().substring(root.length())
+										.replace(File.separatorChar, '/');
+								StaticResource.register(PUBLIC_DIR + relative, m.result());
+								manifest.put(pathPrefix + "/public" + relative, m.result().getHash());
+							} else {
+								log.warn("Error hashing static resource " + path, m.cause());
+							}
+							next(vertx, root, pathPrefix, queue, manifest);
+						}
+					});
+				} else {
+					next(vertx, root, pathPrefix, queue, manifest);
+				}
+			}
+		});
+	}
+
+	/*
+	 * Returns the url with a "v" fingerprint parameter when the content hash of the resource is known.
+	 */
+	public static String fingerprint(Vertx vertx, String publicPath, String url) {
+		if (vertx == null) {
+			return url;
+		}
+		int q = publicPath.indexOf('?');
+		String hash = (String) vertx.sharedData().getMap(MAP_NAME)
+				.get(q < 0 ? publicPath : publicPath.substring(0, q));
+		if (hash == null) {
+			return url;
+		}
+		return url + (url.indexOf('?') < 0 ? "?v=" : "&v=") + hash;
+	}
+
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.wseduc.webutils.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.file.AsyncFile;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.http.HttpServerResponse;
+
+/*
+ * Single and multiple byte ranges (RFC 7233) for static and gridfs downloads.
+ */
+public final class ByteRange {
+
+	private static final int MAX_RANGES = 16;
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private final long start;
+	private final long end;
+
+	public ByteRange(long start, long end) {
+		this.start = start;
+		this.end = end;
+	}
+
+	public long getStart() {
+		return start;
+	}
+
+	public long getEnd() {
+		return end;
+	}
+
+	public long length() {
+		return end - start + 1;
+	}
+
+	public String contentRange(long size) {
+		return "bytes " + start + "-" + end + "/" + size;
+	}
+
+	/*
+	 * Returns null when the whole representation must be sent (no header, syntax error,
+	 * too many ranges), an empty list when no range is satisfiable.
+	 */
+	public static List<ByteRange> parse(String header, long size) {
+		if (header == null || !header.startsWith("bytes=")) {
+			return null;
+		}
+		List<ByteRange> ranges = new ArrayList<>();
+		for (String spec : header.substring(6).split(",")) {
+			spec = spec.trim();
+			if (spec.isEmpty()) continue;
+			int idx = spec.indexOf('-');
+			if (idx < 0) {
+				return null;
+			}
+			long start, end;
+			try {
+				if (idx == 0) {
+					long suffix = Long.parseLong(spec.substring(1));
+					if (suffix <= 0) continue;
+					start = Math.max(0, size - suffix);
+					end = size - 1;
+				} else {
+					start = Long.parseLong(spec.substring(0, idx));
+					end = (idx == spec.length() - 1) ? size - 1 : Long.parseLong(spec.substring(idx + 1));
+					if (end < start) {
+						return null;
+					}
+					end = Math.min(end, size - 1);
+				}
+			} catch (NumberFormatException e) {
+				return null;
+			}
+			if (start < size && start <= end) {
+				ranges.add(new ByteRange(start, end));
+			}
+			if (ranges.size() > MAX_RANGES) {
+				return null;
+			}
+		}
+		if (ranges.size() == 1 && ranges.get(0).getStart() == 0 && ranges.get(0).getEnd() == size - 1) {
+			return null;
+		}
+		return ranges.isEmpty() ? Collections.<ByteRange>emptyList() : ranges;
+	}
+
+	/*
+	 * If-Range validation : the range is honoured only if the validator sent is the
+	 * current strong ETag or the exact Last-Modified date.
+	 */
+	public static boolean checkIfRange(HttpServerRequest request, String etag, String lastModified) {
+		return ifRangeMatches(request.headers().get("If-Range"), etag, lastModified);
+	}
+
+	public static boolean ifRangeMatches(String ifRange, String etag, String lastModified) {
+		if (ifRange == null) {
+			return true;
+		}
+		if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+			return etag != null && !ifRange.startsWith("W/") && ifRange.equals(etag);
+		}
+		return ifRange.equals(lastModified);
+	}
+
+	public static List<ByteRange> requested(HttpServerRequest request, long size, String etag,
+			String lastModified) {
+		if (!checkIfRange(request, etag, lastModified)) {
+			return null;
+		}
+		return parse(request.headers().get("Range"), size);
+	}
+
+	public static void rangeNotSatisfiable(HttpServerResponse response, long size) {
+		response.putHeader("Content-Range", "bytes */" + size);
+		response.setStatusCode(416).setStatusMessage("Requested Range Not Satisfiable").end();
+	}
+
+	public static void sendBuffer(HttpServerResponse response, Buffer file, List<ByteRange> ranges,
+			String contentType) {
+		final long size = file.length();
+		if (ranges.isEmpty()) {
+			rangeNotSatisfiable(response, size);
+			return;
+		}
+		response.setStatusCode(206).setStatusMessage("Partial Content");
+		if (ranges.size() == 1) {
+			ByteRange r = ranges.get(0);
+			response.putHeader("Content-Range", r.contentRange(size));
+			response.putHeader("Content-Type", contentType);
+			response.end(file.getBuffer((int) r.getStart(), (int) r.getEnd() + 1));
+			return;
+		}
+		final String boundary = boundary();
+		response.putHeader("Content-Type", "multipart/byteranges; boundary=" + boundary);
+		Buffer body = new Buffer((int) contentLength(ranges, size, boundary, contentType));
+		for (ByteRange r : ranges) {
+			body.appendString(partHeader(r, size, boundary, contentType));
+			body.appendBuffer(file.getBuffer((int) r.getStart(), (int) r.getEnd() + 1));
+		}
+		body.appendString(partTrailer(boundary));
+		response.end(body);
+	}
+
+	public static void sendFile(Vertx vertx, final HttpServerResponse response, final String path,
+			final List<ByteRange> ranges, final long size, final String contentType) {
+		if (ranges.isEmpty()) {
+			rangeNotSatisfiable(response, size);
+			return;
+		}
+		vertx.fileSystem().open(path, null, true, false, false, new Handler<AsyncResult<AsyncFile>>() {
+			@Override
+			public void handle(AsyncResult<AsyncFile> ar) {
+				if (ar.failed()) {
+					response.setStatusCode(404).setStatusMessage("Not Found").end();
+					return;
+				}
+				response.setStatusCode(206).setStatusMessage("Partial Content");
+				final String boundary;
+				if (ranges.size() == 1) {
+					boundary = null;
+					response.putHeader("Content-Range", ranges.get(0).contentRange(size));
+					response.putHeader("Content-Type", contentType);
+					response.putHeader("Content-Length", String.valueOf(ranges.get(0).length()));
+				} else {
+					boundary = boundary();
+					response.putHeader("Content-Type", "multipart/byteranges; boundary=" + boundary);
+					response.putHeader("Content-Length",
+							String.valueOf(contentLength(ranges, size, boundary, contentType)));
+				}
+				new RegionWriter(ar.result(), response, ranges, size, boundary, contentType).next();
+			}
+		});
+	}
+
+	private static String boundary() {
+		return Long.toHexString(ThreadLocalRandom.current().nextLong());
+	}
+
+	private static String partHeader(ByteRange r, long size, String boundary, String contentType) {
+		return "\r\n--" + boundary + "\r\nContent-Type: " + contentType +
+				"\r\nContent-Range: " + r.contentRange(size) + "\r\n\r\n";
+	}
+
+	private static String partTrailer(String boundary) {
+		return "\r\n--" + boundary + "--\r\n";
+	}
+
+	private static long contentLength(List<ByteRange> ranges, long size, String boundary, String contentType) {
+		long length = partTrailer(boundary).length();
+		for (ByteRange r : ranges) {
+			length += partHeader(r, size, boundary, contentType).length() + r.length();
+		}
+		return length;
+	}
+
+	/*
+	 * Streams file regions to the response, chunk by chunk, following the response back-pressure.
+	 */
+	private static final class RegionWriter {
+
+		private final AsyncFile file;
+		private final HttpServerResponse response;
+		private final List<ByteRange> ranges;
+		private final long size;
+		private final String boundary;
+		private final String contentType;
+		private int rangeIdx = -1;
+		private long position;
+		private long remaining;
+		private boolean closed;
+
+		private RegionWriter(AsyncFile file, HttpServerResponse response, List<ByteRange> ranges,
+				long size, String boundary, String contentType) {
+			this.file = file;
+			this.response = response;
+			this.ranges = ranges;
+			this.size = size;
+			this.boundary = boundary;
+			this.contentType = contentType;
+			response.closeHandler(new Handler<Void>() {
+				@Override
+				public void handle(Void event) {
+					close();
+				}
+			});
+		}
+
+		private void next() {
+			if (closed) {
+				return;
+			}
+			if (remaining == 0) {
+				rangeIdx++;
+				if (rangeIdx >= ranges.size()) {
+					if (boundary != null) {
+						response.end(partTrailer(boundary));
+					} else {
+						response.end();
+					}
+					close();
+					return;
+				}
+				ByteRange r = ranges.get(rangeIdx);
+				position = r.getStart();
+				remaining = r.length();
+				if (boundary != null) {
+					response.write(partHeader(r, size, boundary, contentType));
+				}
+			}
+			final int len = (int) Math.min(CHUNK_SIZE, remaining);
+			file.read(new Buffer(len), 0, position, len, new Handler<AsyncResult<Buffer>>() {
+				@Override
+				public void handle(AsyncResult<Buffer> ar) {
+					if (closed) {
+						return;
+					}
+					if (ar.failed()) {
+						close();
+						response.close();
+						return;
+					}
+					position += len;
+					remaining -= len;
+					response.write(ar.result());
+					if (response.writeQueueFull()) {
+						response.drainHandler(new Handler<Void>() {
+							@Override
+							public void handle(Void event) {
+								next();
+							}
+						});
+					} else {
+						next();
+					}
+				}
+			});
+		}
+
+		private void close() {
+			if (!closed) {
+				closed = true;
+				file.close();
+			}
+		}
+
+	}
+
+}
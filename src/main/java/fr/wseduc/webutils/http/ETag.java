@@ -21,14 +21,24 @@ import org.vertx.java.core.http.HttpServerResponse;
 
 public class ETag {
 
+	/*
+	 * Strong entity tag of a file : its id, quoted.
+	 */
+	public static String of(String fileId) {
+		return (fileId == null) ? null : "\"" + fileId + "\"";
+	}
+
 	public static void addHeader(HttpServerResponse response, String fileId) {
-		response.headers().add("ETag", fileId);
+		response.headers().add("ETag", of(fileId));
 	}
 
+	/*
+	 * Also accepts the bare ids sent by clients of the previous unquoted header.
+	 */
 	public static boolean check(HttpServerRequest request, String fileId) {
 		String inm = request.headers().get("If-None-Match");
 		if (inm != null) {
-			return inm.equals(fileId);
+			return inm.equals(fileId) || StaticResource.matchETag(inm, of(fileId));
 		}
 		return false;
 	}
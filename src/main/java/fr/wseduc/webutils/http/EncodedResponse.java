@@ -0,0 +1,138 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.wseduc.webutils.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPOutputStream;
+
+import fr.wseduc.webutils.security.CryptoPool;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.http.HttpServerResponse;
+
+/*
+ * Response body encoded once, plain and gzip, with a content ETag.
+ * Used to cache large and rarely modified json documents (ex : i18n bundles).
+ */
+public final class EncodedResponse {
+
+	private final byte[] plain;
+	private final byte[] gzip;
+	private final String etag;
+	private final String gzipEtag;
+	private final String contentType;
+
+	/*
+	 * @param hash content hash, the gzip variant is tagged with a "-gz" suffix. Null for no ETag.
+	 */
+	private EncodedResponse(byte[] plain, byte[] gzip, String hash, String contentType) {
+		this.plain = plain;
+		this.gzip = gzip;
+		this.etag = (hash != null) ? "\"" + hash + "\"" : null;
+		this.gzipEtag = (hash != null) ? "\"" + hash + "-gz\"" : null;
+		this.contentType = contentType;
+	}
+
+	public static EncodedResponse json(String json) {
+		return of(json.getBytes(StandardCharsets.UTF_8), "application/json");
+	}
+
+	/*
+	 * Response rendered without ETag and not stored by clients (ex : fallback bundle served
+	 * while the requested one loads).
+	 */
+	public static EncodedResponse noStore(String json) {
+		return new EncodedResponse(json.getBytes(StandardCharsets.UTF_8), null, null, "application/json");
+	}
+
+	public static EncodedResponse of(byte[] content, String contentType) {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 4 + 64);
+			try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+				gz.write(content);
+			}
+			byte[] compressed = out.toByteArray();
+			String hash = CryptoPool.hex(CryptoPool.digest("MD5").digest(content));
+			return new EncodedResponse(content, compressed.length < content.length ? compressed : null,
+					hash, contentType);
+		} catch (IOException | NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/*
+	 * ETag of the identity encoding.
+	 */
+	public String getETag() {
+		return etag;
+	}
+
+	/*
+	 * Bytes held by this response.
+	 */
+	public long weight() {
+		return plain.length + (gzip != null ? gzip.length : 0);
+	}
+
+	public void render(HttpServerRequest request) {
+		final HttpServerResponse response = request.response();
+		final boolean gzipped = gzip != null && acceptsGzip(request.headers().get("Accept-Encoding"));
+		if (etag == null) {
+			response.putHeader("Cache-Control", "no-store");
+		} else {
+			response.putHeader("ETag", gzipped ? gzipEtag : etag);
+		}
+		response.putHeader("Vary", "Accept-Encoding");
+		if (etag != null) {
+			final String inm = request.headers().get("If-None-Match");
+			if (StaticResource.matchETag(inm, etag) || StaticResource.matchETag(inm, gzipEtag)) {
+				Renders.notModified(request);
+				return;
+			}
+		}
+		response.putHeader("content-type", contentType);
+		if (gzipped) {
+			response.putHeader("Content-Encoding", "gzip");
+			response.end(new Buffer(gzip));
+		} else {
+			response.end(new Buffer(plain));
+		}
+	}
+
+	static boolean acceptsGzip(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.split(";");
+			if ("gzip".equalsIgnoreCase(parts[0].trim())) {
+				for (int i = 1; i < parts.length; i++) {
+					String q = parts[i].trim();
+					if (q.startsWith("q=") && q.substring(2).matches("0(\\.0*)?")) {
+						return false;
+					}
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
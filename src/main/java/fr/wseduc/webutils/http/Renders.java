@@ -57,12 +57,14 @@ public class Renders {
 
 	protected void setLambdaTemplateRequest(final HttpServerRequest request,
 			Map<String, Object> ctx) {
+		final String host = getHost(request);
+		final String acceptLanguage = I18n.acceptLanguage(request);
 		ctx.put("i18n", new Mustache.Lambda() {
 
 			@Override
 			public void execute(Template.Fragment frag, Writer out) throws IOException {
 				String key = frag.execute();
-				String text = i18n.translate(key, getHost(request), I18n.acceptLanguage(request));
+				String text = i18n.translate(key, host, acceptLanguage);
 				out.write(text);
 			}
 		});
@@ -87,6 +89,21 @@ public class Renders {
 			}
 		});
 
+		ctx.put("bundle", new Mustache.Lambda() {
+
+			@Override
+			public void execute(Template.Fragment frag, Writer out) throws IOException {
+				String name = frag.execute();
+				String path = AssetBundles.path(pathPrefix, name);
+				if (path != null) {
+					String protocol = container.config().getBoolean("ssl", false) ? "https://" : "http://";
+					out.write(protocol + getHost(request) + path);
+				} else {
+					log.warn("Unknown bundle " + name);
+				}
+			}
+		});
+
 		ctx.put("formatBirthDate", new Mustache.Lambda() {
 			@Override
 			public void execute(Template.Fragment frag, Writer out) throws IOException {
@@ -110,10 +127,9 @@ public class Renders {
 		if (infraPort != null && request.headers().get("X-Forwarded-For") == null) {
 			host = host.split(":")[0] + ":" + infraPort;
 		}
-		return protocol
-				+ host
-				+ ((publicDir != null && publicDir.startsWith("/")) ? publicDir : "/" + publicDir)
+		String publicPath = ((publicDir != null && publicDir.startsWith("/")) ? publicDir : "/" + publicDir)
 				+ "/" + path;
+		return AssetManifest.fingerprint(vertx, publicPath, protocol + host + publicPath);
 	}
 
 	public void renderView(HttpServerRequest request) {
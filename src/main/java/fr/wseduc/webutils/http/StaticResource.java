@@ -16,25 +16,103 @@
 
 package fr.wseduc.webutils.http;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import fr.wseduc.webutils.DefaultAsyncResult;
+import fr.wseduc.webutils.security.CryptoPool;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.file.AsyncFile;
+import org.vertx.java.core.file.FileProps;
 import org.vertx.java.core.http.HttpServerRequest;
 import org.vertx.java.core.http.HttpServerResponse;
+import org.vertx.java.core.http.impl.MimeMapping;
 
 public class StaticResource {
 
-	private static final SimpleDateFormat format =
-			new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.UK);
-	static {
-		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+	private static final ThreadLocal<SimpleDateFormat> format = new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			SimpleDateFormat f = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.UK);
+			f.setTimeZone(TimeZone.getTimeZone("GMT"));
+			return f;
+		}
+	};
+	public static final String IMMUTABLE = "public, max-age=31536000, immutable";
+	private static final int DEFAULT_INDEX_MAX_ENTRIES = 20000;
+	private static final long DEFAULT_INDEX_MAX_MEMORY = 16 * 1024 * 1024;
+	private static volatile MetadataIndex index =
+			new MetadataIndex(DEFAULT_INDEX_MAX_ENTRIES, DEFAULT_INDEX_MAX_MEMORY);
+
+	/*
+	 * Validators and description of a static file, computed at startup by AssetManifest
+	 * or at first access. lastModified is in epoch seconds, the precision of HTTP dates.
+	 */
+	public static final class Metadata {
+
+		private final String hash;
+		private final String etag;
+		private final long lastModified;
+		private final String lastModifiedHeader;
+		private final long size;
+		private final String contentType;
+
+		public Metadata(String hash, long lastModified, long size, String contentType) {
+			this.hash = hash;
+			this.etag = "\"" + hash + "\"";
+			this.lastModified = lastModified;
+			this.lastModifiedHeader = formatDate(new Date(lastModified * 1000l));
+			this.size = size;
+			this.contentType = contentType;
+		}
+
+		public String getHash() {
+			return hash;
+		}
+
+		public String getETag() {
+			return etag;
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		public String getLastModifiedHeader() {
+			return lastModifiedHeader;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public String getContentType() {
+			return contentType;
+		}
+
+		private long estimatedSize(String path) {
+			return 160 + 2 * (path.length() + hash.length() + etag.length() +
+					lastModifiedHeader.length() + contentType.length());
+		}
+
 	}
 
 	public static void addLastModifiedHeader(HttpServerResponse response, Date resourceLastModified) {
-		response.headers().add("Last-Modified", format.format(resourceLastModified));
+		response.headers().add("Last-Modified", formatDate(resourceLastModified));
 	}
 
 	public static void addLastModifiedHeader(HttpServerResponse response, String resourceLastModified) {
@@ -44,14 +122,64 @@ public class StaticResource {
 	public static boolean checkLastModified(HttpServerRequest request, String resourceLastModified) {
 		String ims = request.headers().get("If-Modified-Since");
 		if (ims != null && resourceLastModified != null) {
-			try {
-				Date imsDate = format.parse(ims);
-				Date rlm = format.parse(resourceLastModified);
-				return imsDate != null && rlm != null &&
-						imsDate.getTime() >= rlm.getTime();
-			} catch (ParseException | NumberFormatException e) {
-				return false;
+			if (ims.equals(resourceLastModified)) {
+				return true;
+			}
+			long imsDate = parseDate(ims);
+			long rlm = parseDate(resourceLastModified);
+			return imsDate >= 0 && rlm >= 0 && imsDate >= rlm;
+		}
+		return false;
+	}
+
+	public static boolean checkNotModified(HttpServerRequest request, Metadata resource) {
+		String inm = request.headers().get("If-None-Match");
+		if (inm != null) {
+			return matchETag(inm, resource.getETag());
+		}
+		String ims = request.headers().get("If-Modified-Since");
+		if (ims != null) {
+			// browsers send back the exact Last-Modified value, so no parsing is needed in most cases
+			if (ims.equals(resource.getLastModifiedHeader())) {
+				return true;
 			}
+			long imsDate = parseDate(ims);
+			return imsDate >= 0 && imsDate / 1000 >= resource.getLastModified();
+		}
+		return false;
+	}
+
+	/*
+	 * Weak comparison of If-None-Match entity tags (RFC 7232 section 3.2), without allocation.
+	 */
+	public static boolean matchETag(String header, String etag) {
+		if (header == null || etag == null) {
+			return false;
+		}
+		final int len = header.length();
+		int i = 0;
+		while (i < len) {
+			while (i < len && (header.charAt(i) == ' ' || header.charAt(i) == ',' || header.charAt(i) == '\t')) {
+				i++;
+			}
+			int end = header.indexOf(',', i);
+			if (end < 0) {
+				end = len;
+			}
+			int last = end;
+			while (last > i && (header.charAt(last - 1) == ' ' || header.charAt(last - 1) == '\t')) {
+				last--;
+			}
+			if (last - i == 1 && header.charAt(i) == '*') {
+				return true;
+			}
+			if (last - i > 2 && header.charAt(i) == 'W' && header.charAt(i + 1) == '/') {
+				i += 2;
+			}
+			if (last - i == etag.length() && header.regionMatches(i, etag, 0, etag.length())) {
+				return true;
+			}
+			i = end + 1;
 		}
 		return false;
 	}
@@ -74,8 +202,289 @@ public class StaticResource {
 		}
 	}
 
+	public static void serveRessource(final Vertx vertx, final HttpServerRequest request,
+			String path, final boolean dev) {
+		final String ressourcePath = normalize(path);
+		if (ressourcePath == null) {
+			request.response().setStatusCode(404).setStatusMessage("Not Found").end();
+			return;
+		}
+		if (dev) {
+			request.response().headers().add("Cache-Control", "max-age=0, no-cache, must-revalidate");
+			request.response().sendFile(ressourcePath);
+			return;
+		}
+		Metadata m = index.get(ressourcePath);
+		if (m != null) {
+			serveRessource(vertx, request, ressourcePath, m);
+			return;
+		}
+		loadMetadata(vertx, ressourcePath, new Handler<AsyncResult<Metadata>>() {
+			@Override
+			public void handle(AsyncResult<Metadata> ar) {
+				if (ar.succeeded()) {
+					Metadata previous = index.putIfAbsent(ressourcePath, ar.result());
+					serveRessource(vertx, request, ressourcePath, previous != null ? previous : ar.result());
+				} else {
+					request.response().sendFile(ressourcePath);
+				}
+			}
+		});
+	}
+
+	private static void serveRessource(Vertx vertx, HttpServerRequest request, String ressourcePath,
+			Metadata m) {
+		request.response().headers()
+				.add("ETag", m.getETag())
+				.add("Last-Modified", m.getLastModifiedHeader())
+				.add("Accept-Ranges", "bytes");
+		if (m.getHash().equals(versionParam(request.query()))) {
+			request.response().headers().add("Cache-Control", IMMUTABLE);
+		}
+		if (checkNotModified(request, m)) {
+			request.response().setStatusCode(304).setStatusMessage("Not Modified").end();
+			return;
+		}
+		List<ByteRange> ranges = ByteRange.requested(request, m.getSize(), m.getETag(),
+				m.getLastModifiedHeader());
+		if (ranges != null) {
+			ByteRange.sendFile(vertx, request.response(), ressourcePath, ranges, m.getSize(),
+					m.getContentType());
+		} else {
+			request.response().sendFile(ressourcePath);
+		}
+	}
+
+	public static void register(String path, Metadata m) {
+		String p = normalize(path);
+		if (p != null) {
+			index.put(p, m);
+		}
+	}
+
+	public static synchronized void configureIndex(int maxEntries, long maxMemory) {
+		MetadataIndex current = index;
+		if (current.maxEntries != maxEntries || current.maxMemory != maxMemory) {
+			index = new MetadataIndex(maxEntries, maxMemory);
+		}
+	}
+
+	public static int indexSize() {
+		return index.size();
+	}
+
+	/*
+	 * Resolves "." and ".." segments and duplicated slashes of a relative resource path.
+	 * Returns null if the path leaves the public directory, or contains a backslash or
+	 * an encoded separator or dot, which the file system would not resolve like the segments checked here.
+	 */
+	public static String normalize(String path) {
+		if (path == null || path.indexOf('\0') >= 0 || path.indexOf('\\') >= 0 || hasEncodedSeparator(path)) {
+			return null;
+		}
+		if (path.indexOf("/.") < 0 && path.indexOf("//") < 0 && path.startsWith("./public/")) {
+			return path;
+		}
+		String[] segments = path.split("/");
+		String[] stack = new String[segments.length];
+		int depth = 0;
+		for (String segment : segments) {
+			if (segment.isEmpty() || ".".equals(segment)) {
+				continue;
+			}
+			if ("..".equals(segment)) {
+				if (depth == 0) {
+					return null;
+				}
+				depth--;
+			} else {
+				stack[depth++] = segment;
+			}
+		}
+		if (depth < 2 || !"public".equals(stack[0])) {
+			return null;
+		}
+		StringBuilder sb = new StringBuilder(".");
+		for (int i = 0; i < depth; i++) {
+			sb.append('/').append(stack[i]);
+		}
+		return sb.toString();
+	}
+
+	private static boolean hasEncodedSeparator(String path) {
+		for (int i = path.indexOf('%'); i >= 0 && i + 2 < path.length(); i = path.indexOf('%', i + 1)) {
+			char c = Character.toLowerCase(path.charAt(i + 2));
+			if (path.charAt(i + 1) == '2' && (c == 'e' || c == 'f') ||
+					path.charAt(i + 1) == '5' && c == 'c') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Value of the "v" fingerprint parameter added by AssetManifest to static urls.
+	 */
+	private static String versionParam(String query) {
+		if (query == null) {
+			return null;
+		}
+		int idx;
+		if (query.startsWith("v=")) {
+			idx = 2;
+		} else {
+			idx = query.indexOf("&v=");
+			if (idx < 0) {
+				return null;
+			}
+			idx += 3;
+		}
+		int end = query.indexOf('&', idx);
+		return query.substring(idx, end < 0 ? query.length() : end);
+	}
+
+	public static String contentType(String path) {
+		int idx = path.lastIndexOf('.');
+		String contentType = null;
+		if (idx >= 0 && idx > path.lastIndexOf('/')) {
+			contentType = MimeMapping.getMimeTypeForExtension(path.substring(idx + 1));
+		}
+		return contentType != null ? contentType : "application/octet-stream";
+	}
+
+	public static void loadMetadata(final Vertx vertx, final String path,
+			final Handler<AsyncResult<Metadata>> handler) {
+		vertx.fileSystem().props(path, new Handler<AsyncResult<FileProps>>() {
+			@Override
+			public void handle(AsyncResult<FileProps> props) {
+				if (props.failed() || !props.result().isRegularFile()) {
+					handler.handle(new DefaultAsyncResult<Metadata>(props.failed() ? props.cause() :
+							new IllegalArgumentException("Not a regular file : " + path)));
+					return;
+				}
+				final long lastModified = props.result().lastModifiedTime().getTime() / 1000;
+				final long size = props.result().size();
+				final String contentType = contentType(path);
+				contentHash(vertx, path, new Handler<AsyncResult<String>>() {
+					@Override
+					public void handle(AsyncResult<String> hash) {
+						if (hash.succeeded()) {
+							handler.handle(new DefaultAsyncResult<>(
+									new Metadata(hash.result(), lastModified, size, contentType)));
+						} else {
+							handler.handle(new DefaultAsyncResult<Metadata>(hash.cause()));
+						}
+					}
+				});
+			}
+		});
+	}
+
+	public static void contentHash(Vertx vertx, final String path, final Handler<AsyncResult<String>> handler) {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			handler.handle(new DefaultAsyncResult<String>(e));
+			return;
+		}
+		vertx.fileSystem().open(path, null, true, false, false, new Handler<AsyncResult<AsyncFile>>() {
+			@Override
+			public void handle(AsyncResult<AsyncFile> ar) {
+				if (ar.failed()) {
+					handler.handle(new DefaultAsyncResult<String>(ar.cause()));
+					return;
+				}
+				final AsyncFile file = ar.result();
+				file.dataHandler(new Handler<Buffer>() {
+					@Override
+					public void handle(Buffer data) {
+						digest.update(data.getBytes());
+					}
+				});
+				file.exceptionHandler(new Handler<Throwable>() {
+					@Override
+					public void handle(Throwable t) {
+						file.close();
+						handler.handle(new DefaultAsyncResult<String>(t));
+					}
+				});
+				file.endHandler(new Handler<Void>() {
+					@Override
+					public void handle(Void v) {
+						file.close();
+						handler.handle(new DefaultAsyncResult<>(CryptoPool.hex(digest.digest())));
+					}
+				});
+			}
+		});
+	}
+
+	private static long parseDate(String date) {
+		try {
+			Date d = format.get().parse(date);
+			return d != null ? d.getTime() : -1l;
+		} catch (ParseException | NumberFormatException e) {
+			return -1l;
+		}
+	}
+
 	public static String formatDate(Date lastModified) {
-		return format.format(lastModified);
+		return format.get().format(lastModified);
+	}
+
+	/*
+	 * Read without lock on each static request. Bounded by entries and estimated memory :
+	 * when a limit is exceeded, arbitrary entries are dropped, they are reloaded on next access.
+	 */
+	private static final class MetadataIndex {
+
+		private final ConcurrentMap<String, Metadata> map = new ConcurrentHashMap<>();
+		private final AtomicLong weight = new AtomicLong();
+		private final int maxEntries;
+		private final long maxMemory;
+
+		private MetadataIndex(int maxEntries, long maxMemory) {
+			this.maxEntries = maxEntries;
+			this.maxMemory = maxMemory;
+		}
+
+		private Metadata get(String path) {
+			return map.get(path);
+		}
+
+		private void put(String path, Metadata m) {
+			Metadata old = map.put(path, m);
+			if (old != null) {
+				weight.addAndGet(-old.estimatedSize(path));
+			}
+			weight.addAndGet(m.estimatedSize(path));
+			evict();
+		}
+
+		private Metadata putIfAbsent(String path, Metadata m) {
+			Metadata old = map.putIfAbsent(path, m);
+			if (old == null) {
+				weight.addAndGet(m.estimatedSize(path));
+				evict();
+			}
+			return old;
+		}
+
+		private int size() {
+			return map.size();
+		}
+
+		private void evict() {
+			Iterator<Map.Entry<String, Metadata>> it = map.entrySet().iterator();
+			while (it.hasNext() && (map.size() > maxEntries || weight.get() > maxMemory)) {
+				Map.Entry<String, Metadata> e = it.next();
+				if (map.remove(e.getKey(), e.getValue())) {
+					weight.addAndGet(-e.getValue().estimatedSize(e.getKey()));
+				}
+			}
+		}
+
 	}
 
 }
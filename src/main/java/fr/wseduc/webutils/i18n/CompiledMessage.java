@@ -0,0 +1,93 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.wseduc.webutils.i18n;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * I18n value split in literal and argument segments : "Hello {0}, you have {1} messages"
+ * is rendered with one StringBuilder pass instead of one regex replacement per argument.
+ * Placeholders without argument are kept as is.
+ */
+public final class CompiledMessage {
+
+	private final String[] literals;
+	private final int[] arguments;
+	private final int length;
+
+	private CompiledMessage(String[] literals, int[] arguments, int length) {
+		this.literals = literals;
+		this.arguments = arguments;
+		this.length = length;
+	}
+
+	/*
+	 * Returns null if the value doesn't contain any placeholder.
+	 */
+	public static CompiledMessage compile(String value) {
+		if (value == null || value.indexOf('{') < 0) {
+			return null;
+		}
+		final List<String> literals = new ArrayList<>();
+		final List<Integer> arguments = new ArrayList<>();
+		final int len = value.length();
+		int start = 0;
+		int i = value.indexOf('{');
+		while (i >= 0 && i < len) {
+			int j = i + 1;
+			while (j < len && value.charAt(j) >= '0' && value.charAt(j) <= '9') {
+				j++;
+			}
+			// same placeholders as the previous "\\{" + i + "\\}" patterns : no leading zero
+			if (j > i + 1 && j < len && value.charAt(j) == '}' && j - i < 11 &&
+					(value.charAt(i + 1) != '0' || j == i + 2)) {
+				literals.add(value.substring(start, i));
+				arguments.add(Integer.parseInt(value.substring(i + 1, j)));
+				start = j + 1;
+				i = value.indexOf('{', start);
+			} else {
+				i = value.indexOf('{', i + 1);
+			}
+		}
+		if (arguments.isEmpty()) {
+			return null;
+		}
+		literals.add(value.substring(start));
+		int[] args = new int[arguments.size()];
+		for (int k = 0; k < args.length; k++) {
+			args[k] = arguments.get(k);
+		}
+		return new CompiledMessage(literals.toArray(new String[literals.size()]), args, len);
+	}
+
+	public String format(String... args) {
+		final StringBuilder sb = new StringBuilder(length + 16 * arguments.length);
+		for (int i = 0; i < arguments.length; i++) {
+			sb.append(literals[i]);
+			final int idx = arguments[i];
+			if (idx < args.length && args[idx] != null) {
+				sb.append(args[idx]);
+			} else {
+				sb.append('{').append(idx).append('}');
+			}
+		}
+		sb.append(literals[arguments.length]);
+		return sb.toString();
+	}
+
+}
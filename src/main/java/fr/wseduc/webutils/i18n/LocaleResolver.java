@@ -0,0 +1,128 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.wseduc.webutils.i18n;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+ * Accept-Language lookup (RFC 4647 section 3.4) : language ranges are tried by decreasing
+ * quality, each one truncated from the end until it matches an available locale.
+ * Header example : "fr,en-us;q=0.8,fr-fr;q=0.5,en;q=0.3"
+ * Parsed headers are cached without lock on reads (the cache is emptied when full,
+ * headers sent by browsers are few), the lookup itself doesn't allocate.
+ */
+public final class LocaleResolver {
+
+	private final ConcurrentMap<String, Locale[]> candidates = new ConcurrentHashMap<>();
+	private final int maxEntries;
+
+	public LocaleResolver(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
+	public Locale resolve(String acceptLanguage, Set<Locale> available, Locale defaultLocale) {
+		if (acceptLanguage == null) {
+			return defaultLocale;
+		}
+		Locale[] c = candidates.get(acceptLanguage);
+		if (c == null) {
+			c = parse(acceptLanguage);
+			if (candidates.size() >= maxEntries) {
+				candidates.clear();
+			}
+			candidates.put(acceptLanguage, c);
+		}
+		for (Locale l : c) {
+			if (available.contains(l)) {
+				return l;
+			}
+		}
+		return defaultLocale;
+	}
+
+	private static final class Range {
+
+		private final String tag;
+		private final float quality;
+
+		private Range(String tag, float quality) {
+			this.tag = tag;
+			this.quality = quality;
+		}
+
+	}
+
+	/*
+	 * Returns the lookup candidates of the header in preference order,
+	 * ex : "en-us;q=0.8,fr-fr" gives fr-FR, fr, en-US, en.
+	 */
+	static Locale[] parse(String acceptLanguage) {
+		final List<Range> ranges = new ArrayList<>();
+		for (String r : acceptLanguage.split(",")) {
+			String[] parts = r.split(";");
+			String tag = parts[0].trim();
+			if (tag.isEmpty() || "*".equals(tag)) continue;
+			float quality = 1f;
+			for (int i = 1; i < parts.length; i++) {
+				String p = parts[i].trim();
+				if (p.startsWith("q=") || p.startsWith("Q=")) {
+					try {
+						quality = Float.parseFloat(p.substring(2));
+					} catch (NumberFormatException e) {
+						quality = 0f;
+					}
+				}
+			}
+			if (quality > 0f && quality <= 1f) {
+				ranges.add(new Range(tag, quality));
+			}
+		}
+		// stable sort : same quality ranges keep the header order
+		Collections.sort(ranges, new Comparator<Range>() {
+			@Override
+			public int compare(Range r1, Range r2) {
+				return Float.compare(r2.quality, r1.quality);
+			}
+		});
+		final List<Locale> locales = new ArrayList<>();
+		for (Range r : ranges) {
+			String tag = r.tag;
+			while (!tag.isEmpty()) {
+				Locale l = Locale.forLanguageTag(tag);
+				if (!l.getLanguage().isEmpty() && !locales.contains(l)) {
+					locales.add(l);
+				}
+				int idx = tag.lastIndexOf('-');
+				if (idx < 0) break;
+				tag = tag.substring(0, idx);
+				// a singleton subtag is removed with the subtag that follows it
+				if (tag.length() > 1 && tag.charAt(tag.length() - 2) == '-') {
+					tag = tag.substring(0, tag.length() - 2);
+				}
+			}
+		}
+		return locales.toArray(new Locale[locales.size()]);
+	}
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.wseduc.webutils.i18n;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.vertx.java.core.json.JsonObject;
+
+/*
+ * Immutable messages of one locale with their compiled placeholders.
+ * Merging returns a new bundle, so a bundle can be read from any thread without lock.
+ * An overlay bundle only holds its own keys and falls back to its parent.
+ */
+public final class MessageBundle {
+
+	private final JsonObject messages;
+	private final Map<String, CompiledMessage> compiled;
+	private final MessageBundle parent;
+
+	public MessageBundle(JsonObject messages) {
+		this(messages, compile(messages), null);
+	}
+
+	private MessageBundle(JsonObject messages, Map<String, CompiledMessage> compiled, MessageBundle parent) {
+		this.messages = messages;
+		this.compiled = Collections.unmodifiableMap(compiled);
+		this.parent = parent;
+	}
+
+	public String get(String key) {
+		for (MessageBundle b = this; b != null; b = b.parent) {
+			String text = b.messages.getString(key);
+			if (text != null) {
+				return text;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Returns the formatted value, or the key (formatted too) if the bundle doesn't contain it.
+	 */
+	public String translate(String key, String... args) {
+		MessageBundle b = this;
+		String text = null;
+		while (b != null && (text = b.messages.getString(key)) == null) {
+			b = b.parent;
+		}
+		if (args.length > 0) {
+			CompiledMessage message = (text != null) ? b.compiled.get(key) : CompiledMessage.compile(key);
+			if (message != null) {
+				return message.format(args);
+			}
+		}
+		return text != null ? text : key;
+	}
+
+	/*
+	 * Bundle with the given keys on top of this one, without copying this bundle.
+	 */
+	public MessageBundle overlay(JsonObject keys) {
+		JsonObject m = keys.copy();
+		return new MessageBundle(m, compile(m), this);
+	}
+
+	public MessageBundle merge(JsonObject keys) {
+		JsonObject m = messages.copy().mergeIn(keys.copy());
+		Map<String, CompiledMessage> c = new HashMap<>(compiled);
+		for (String key : keys.getFieldNames()) {
+			c.remove(key);
+		}
+		c.putAll(compile(keys));
+		return new MessageBundle(m, c, parent);
+	}
+
+	/*
+	 * Shared instance for a bundle without parent, must not be modified. The view of an overlay
+	 * is built on each call and not kept : I18n caches a bounded number of them.
+	 */
+	public JsonObject getMessages() {
+		if (parent == null) {
+			return messages;
+		}
+		JsonObject f = (parent.parent == null) ? parent.messages.copy() : parent.getMessages();
+		return f.mergeIn(messages);
+	}
+
+	public boolean isOverlay() {
+		return parent != null;
+	}
+
+	/*
+	 * Number of keys held by this bundle, without its parent.
+	 */
+	public int size() {
+		return messages.size();
+	}
+
+	/*
+	 * Only values with placeholders are compiled.
+	 */
+	private static Map<String, CompiledMessage> compile(JsonObject keys) {
+		Map<String, CompiledMessage> compiled = new HashMap<>();
+		for (String key : keys.getFieldNames()) {
+			Object value = keys.getValue(key);
+			if (value instanceof String) {
+				CompiledMessage message = CompiledMessage.compile((String) value);
+				if (message != null) {
+					compiled.put(key, message);
+				}
+			}
+		}
+		return compiled;
+	}
+
+}
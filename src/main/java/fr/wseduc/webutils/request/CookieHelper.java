@@ -25,12 +25,15 @@ import io.netty.handler.codec.http.ServerCookieEncoder;
 import java.io.UnsupportedEncodingException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 import org.vertx.java.core.http.HttpServerRequest;
 import org.vertx.java.core.logging.Logger;
 
 import fr.wseduc.webutils.security.HmacSha1;
+import fr.wseduc.webutils.security.SecureHttpServerRequest;
 
 public class CookieHelper {
 
@@ -52,15 +55,106 @@ public class CookieHelper {
 		this.log = log;
 	}
 
+	/*
+	 * Secured requests parse their cookies once, other requests scan the header for the cookie.
+	 */
 	public static String get(String name, HttpServerRequest request) {
-		if (request.headers().get("Cookie") != null) {
-			Set<Cookie> cookies = CookieDecoder.decode(request.headers().get("Cookie"));
-			for (Cookie c : cookies) {
-				if (c.getName().equals(name)) {
-					return c.getValue();
+		if (request instanceof SecureHttpServerRequest) {
+			return ((SecureHttpServerRequest) request).getCookies().get(name);
+		}
+		final String header = request.headers().get("Cookie");
+		if (header != null) {
+			return next(header, name, new int[1]);
+		}
+		return null;
+	}
+
+	/*
+	 * Name and first value of each cookie of a Cookie header, $ attributes excluded.
+	 */
+	public static Map<String, String> parse(String header) {
+		final Map<String, String> cookies = new HashMap<>();
+		if (header == null) {
+			return cookies;
+		}
+		final int[] pos = new int[3];
+		final int len = header.length();
+		while (pos[0] < len) {
+			String value = next(header, null, pos);
+			if (value != null && pos[1] != pos[2] && header.charAt(pos[1]) != '$') {
+				String name = header.substring(pos[1], pos[2]);
+				if (!cookies.containsKey(name)) {
+					cookies.put(name, value);
 				}
 			}
 		}
+		return cookies;
+	}
+
+	/*
+	 * Scans the header from pos[0] to the next cookie named name (any cookie if name is null),
+	 * without decoding the other cookies. Returns its value, unquoted, and moves pos[0] after it.
+	 * With a pos array of length 3, the name bounds are set in pos[1] and pos[2].
+	 * Parsing follows the netty CookieDecoder : ';' separator, raw values unless quoted.
+	 */
+	static String next(String header, String name, int[] pos) {
+		final int len = header.length();
+		int i = pos[0];
+		char c;
+		while (i < len) {
+			c = header.charAt(i);
+			if (c == ';' || Character.isWhitespace(c)) {
+				i++;
+				continue;
+			}
+			final int nameStart = i;
+			while (i < len && (c = header.charAt(i)) != '=' && c != ';') {
+				i++;
+			}
+			int nameEnd = i;
+			while (nameEnd > nameStart && Character.isWhitespace(header.charAt(nameEnd - 1))) {
+				nameEnd--;
+			}
+			final boolean match = (name == null) || (nameEnd - nameStart == name.length() &&
+					header.regionMatches(nameStart, name, 0, name.length()));
+			String value = null;
+			if (i < len && header.charAt(i) == '=') {
+				i++;
+				final char quote = (i < len) ? header.charAt(i) : 0;
+				if (quote == '"' || quote == '\'') {
+					final StringBuilder sb = match ? new StringBuilder() : null;
+					i++;
+					while (i < len && (c = header.charAt(i)) != quote) {
+						if (c == '\\' && i + 1 < len) {
+							c = header.charAt(++i);
+						}
+						if (sb != null) {
+							sb.append(c);
+						}
+						i++;
+					}
+					i++;
+					value = match ? sb.toString() : null;
+				} else {
+					final int valueStart = i;
+					while (i < len && header.charAt(i) != ';') {
+						i++;
+					}
+					value = match ? header.substring(valueStart, i) : null;
+				}
+			} else if (match) {
+				value = "";
+			}
+			if (match) {
+				pos[0] = i;
+				if (pos.length > 2) {
+					pos[1] = nameStart;
+					pos[2] = nameEnd;
+				}
+				return value;
+			}
+		}
+		pos[0] = len;
 		return null;
 	}
 
@@ -114,38 +208,93 @@ public class CookieHelper {
 		cookie.setValue(cookie.getValue() + ":" + signature);
 	}
 
+	/*
+	 * Raw value of a valid signed cookie sent by a client, with the default path.
+	 * Request cookies have no domain, so the signed content starts with "null".
+	 */
+	public String signedValue(String name, String value) {
+		if (signKey == null || value == null) {
+			return null;
+		}
+		try {
+			return value + ":" + HmacSha1.sign("null" + name + "/" + value, signKey);
+		} catch (InvalidKeyException | NoSuchAlgorithmException
+				| IllegalStateException | UnsupportedEncodingException e) {
+			return null;
+		}
+	}
+
 	public String getSigned(String name, HttpServerRequest request) {
 		return getSigned(name, "/", request);
 	}
 
 	public String getSigned(String name, String path, HttpServerRequest request) {
-		if (request.headers().get("Cookie") != null) {
-			Set<Cookie> cookies = CookieDecoder.decode(request.headers().get("Cookie"));
-			for (Cookie c : cookies) {
-				if (c.getName().equals(name) && c.getValue().contains(":")) {
-					int idx = c.getValue().lastIndexOf(":");
-					if (idx > c.getValue().length() - 1) continue;
-					String value = c.getValue().substring(0, idx);
-					String signature = c.getValue().substring(idx+1);
-					String calcSign = null;
-					String cookiePath = path;
-					if (cookiePath == null || cookiePath.trim().isEmpty()) {
-						cookiePath = c.getPath();
-					}
-					try {
-						calcSign = HmacSha1.sign(
-								c.getDomain()+c.getName()+
-								cookiePath+value, signKey);
-					} catch (InvalidKeyException | NoSuchAlgorithmException
-							| IllegalStateException
-							| UnsupportedEncodingException e) {
-					}
-					if (calcSign != null && calcSign.equals(signature)) {
-						return value;
-					}
+		final String header = request.headers().get("Cookie");
+		if (header == null) {
+			return null;
+		}
+		if (header.indexOf('$') >= 0) {
+			// $Path or $Domain attributes are part of the signature
+			return getSignedAttributes(name, path, header);
+		}
+		// request cookies without attributes have no domain and no path
+		final String cookiePath = (path == null || path.trim().isEmpty()) ? null : path;
+		if (request instanceof SecureHttpServerRequest) {
+			// first cookie of the name, the others are only scanned if its signature is invalid
+			String cookie = ((SecureHttpServerRequest) request).getCookies().get(name);
+			String value = (cookie != null) ? verify("null" + name + cookiePath, cookie) : null;
+			if (value != null || cookie == null) {
+				return value;
+			}
+		}
+		final int[] pos = new int[1];
+		String cookie;
+		while ((cookie = next(header, name, pos)) != null) {
+			String value = verify("null" + name + cookiePath, cookie);
+			if (value != null) {
+				return value;
+			}
+		}
+		return null;
+	}
+
+	private String getSignedAttributes(String name, String path, String header) {
+		Set<Cookie> cookies = CookieDecoder.decode(header);
+		for (Cookie c : cookies) {
+			if (c.getName().equals(name)) {
+				String cookiePath = path;
+				if (cookiePath == null || cookiePath.trim().isEmpty()) {
+					cookiePath = c.getPath();
+				}
+				String value = verify(c.getDomain() + c.getName() + cookiePath, c.getValue());
+				if (value != null) {
+					return value;
 				}
 			}
 		}
 		return null;
 	}
+
+	/*
+	 * Value of a "value:signature" cookie if the signature of prefix + value is valid.
+	 */
+	private String verify(String prefix, String cookie) {
+		int idx = cookie.lastIndexOf(':');
+		if (idx < 0) {
+			return null;
+		}
+		String value = cookie.substring(0, idx);
+		String signature = cookie.substring(idx + 1);
+		String calcSign = null;
+		try {
+			calcSign = HmacSha1.sign(prefix + value, signKey);
+		} catch (InvalidKeyException | NoSuchAlgorithmException
+				| IllegalStateException
+				| UnsupportedEncodingException e) {
+		}
+		if (calcSign != null && calcSign.equals(signature)) {
+			return value;
+		}
+		return null;
+	}
 }
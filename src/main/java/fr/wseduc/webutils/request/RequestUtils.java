@@ -17,7 +17,9 @@
 package fr.wseduc.webutils.request;
 
 import fr.wseduc.webutils.http.Renders;
-import fr.wseduc.webutils.security.XSSUtils;
+import fr.wseduc.webutils.security.XssHttpServerRequest;
+import fr.wseduc.webutils.security.XssJsonDecoder;
+import fr.wseduc.webutils.security.XssSecuredHttpServerRequest;
 import fr.wseduc.webutils.validation.JsonSchemaValidator;
 import org.vertx.java.core.AsyncResult;
 import org.vertx.java.core.AsyncResultHandler;
@@ -44,7 +46,7 @@ public class RequestUtils {
 			@Override
 			public void handle(Buffer event) {
 				try {
-					JsonObject json = new JsonObject(XSSUtils.stripXSS(event.toString("UTF-8")));
+					JsonObject json = XssJsonDecoder.decodeObject(event, sanitize(request));
 					handler.handle(json);
 				} catch (RuntimeException e) {
 					log.warn(e.getMessage(), e);
@@ -59,8 +61,7 @@ public class RequestUtils {
 			@Override
 			public void handle(Buffer event) {
 				try {
-					String obj = XSSUtils.stripXSS(event.toString("UTF-8"));
-					JsonArray json = new JsonArray(obj);
+					JsonArray json = XssJsonDecoder.decodeArray(event, sanitize(request));
 					handler.handle(json);
 				} catch (RuntimeException e) {
 					log.warn(e.getMessage(), e);
@@ -76,7 +77,7 @@ public class RequestUtils {
 			@Override
 			public void handle(Buffer event) {
 				try {
-					final JsonObject json = new JsonObject(XSSUtils.stripXSS(event.toString("UTF-8")));
+					final JsonObject json = XssJsonDecoder.decodeObject(event, sanitize(request));
 					validator.validate(schema, json, new AsyncResultHandler<Message<JsonObject>>() {
 						@Override
 						public void handle(AsyncResult<Message<JsonObject>> event) {
@@ -103,6 +104,17 @@ public class RequestUtils {
 		});
 	}
 
+	/*
+	 * Json bodies are always cleaned, except for XSS wrappers of routes with a NONE
+	 * or PARAMS sanitize policy.
+	 */
+	private static boolean sanitize(HttpServerRequest request) {
+		if (request instanceof XssSecuredHttpServerRequest) {
+			return ((XssSecuredHttpServerRequest) request).sanitizeBody();
+		}
+		return !(request instanceof XssHttpServerRequest) || ((XssHttpServerRequest) request).sanitizeBody();
+	}
+
 	public static String acceptVersion(HttpServerRequest request) {
 		final String accept = request.headers().get("Accept");
 		return getAcceptVersion(accept);
@@ -17,16 +17,75 @@
 package fr.wseduc.webutils.request.filter;
 
 
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import fr.wseduc.webutils.collections.TTLCache;
 import fr.wseduc.webutils.security.SecureHttpServerRequest;
+import fr.wseduc.webutils.security.Sha256;
 import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.json.JsonObject;
 import org.vertx.java.core.json.impl.Base64;
 
+/*
+ * Validation results are cached by hash of the Authorization header : valid credentials
+ * with their scope, invalid ones for a shorter time. Clients published on
+ * CLIENT_INVALIDATE_ADDRESS (a "clientId", or nothing to clear the cache) when their
+ * secret or scope changes are removed from the cache.
+ */
 public abstract class AbstractBasicFilter {
 
+	public static final String CLIENT_INVALIDATE_ADDRESS = "wse.oauth.client.invalidate";
+	private static final int DEFAULT_CACHE_SIZE = 1000;
+	private static final long DEFAULT_TTL = 5 * 60 * 1000l;
+	private static final long DEFAULT_NEGATIVE_TTL = 10 * 1000l;
+	private final TTLCache<String, Validation> validations;
+	private final ConcurrentMap<String, String> keysByClient = new ConcurrentHashMap<>();
+	private final long negativeTtl;
+	private boolean registered;
+
+	private static final class Validation {
+
+		private final String clientId;
+		private final String scope;
+
+		private Validation(String clientId, String scope) {
+			this.clientId = clientId;
+			this.scope = scope;
+		}
+
+	}
+
+	protected AbstractBasicFilter() {
+		this(DEFAULT_CACHE_SIZE, DEFAULT_TTL, DEFAULT_NEGATIVE_TTL);
+	}
+
+	/*
+	 * @param ttl time to live of valid credentials in milliseconds, 0 to disable the cache
+	 * @param negativeTtl time to live of invalid credentials in milliseconds, 0 to disable
+	 */
+	protected AbstractBasicFilter(int cacheSize, long ttl, long negativeTtl) {
+		this.validations = new TTLCache<>(cacheSize, ttl);
+		this.negativeTtl = negativeTtl;
+	}
+
 	public void validate(final SecureHttpServerRequest request, final Handler<Boolean> handler) {
 		String authorization = request.headers().get("Authorization");
 		if (authorization != null && authorization.startsWith("Basic ")) {
+			final String key = key(authorization);
+			final Validation cached = (key != null) ? validations.get(key) : null;
+			if (cached != null) {
+				if (cached.scope != null) {
+					request.setAttribute("client_id", cached.clientId);
+					request.setAttribute("scope", cached.scope);
+				}
+				handler.handle(cached.scope != null);
+				return;
+			}
 			String credentials = new String(Base64.decode(authorization.substring(6)));
 			final String[] c = credentials.split(":");
 			if (c.length == 2) {
@@ -38,6 +97,17 @@ public abstract class AbstractBasicFilter {
 							request.setAttribute("client_id", c[0]);
 							request.setAttribute("scope", scope);
 						}
+						if (key != null) {
+							if (res) {
+								validations.put(key, new Validation(c[0], scope));
+								String previous = keysByClient.put(c[0], key);
+								if (previous != null && !previous.equals(key)) {
+									validations.remove(previous);
+								}
+							} else {
+								validations.put(key, new Validation(c[0], null), negativeTtl);
+							}
+						}
 						handler.handle(res);
 					}
 				});
@@ -49,6 +119,48 @@ public abstract class AbstractBasicFilter {
 		}
 	}
 
+	/*
+	 * Removes the cached validation of a client (ex : after a secret change), or all if null.
+	 */
+	public void invalidate(String clientId) {
+		if (clientId == null) {
+			keysByClient.clear();
+			validations.clear();
+			return;
+		}
+		String key = keysByClient.remove(clientId);
+		if (key != null) {
+			validations.remove(key);
+		}
+	}
+
+	public synchronized void registerInvalidationHandler(EventBus eb) {
+		if (eb == null || registered) {
+			return;
+		}
+		registered = true;
+		eb.registerHandler(CLIENT_INVALIDATE_ADDRESS, new Handler<Message<Object>>() {
+			@Override
+			public void handle(Message<Object> message) {
+				String clientId = null;
+				if (message.body() instanceof JsonObject) {
+					clientId = ((JsonObject) message.body()).getString("clientId");
+				} else if (message.body() instanceof String) {
+					clientId = (String) message.body();
+				}
+				invalidate(clientId);
+			}
+		});
+	}
+
+	private static String key(String authorization) {
+		try {
+			return Sha256.hash(authorization);
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+	}
+
 	public boolean hasBasicHeader(HttpServerRequest request) {
 		String authorization = request.headers().get("Authorization");
 		return authorization != null && authorization.startsWith("Basic ");
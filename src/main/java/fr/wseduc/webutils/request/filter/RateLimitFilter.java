@@ -0,0 +1,226 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.wseduc.webutils.request.filter;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fr.wseduc.webutils.collections.LRUCache;
+import fr.wseduc.webutils.http.Binding;
+import fr.wseduc.webutils.security.ActionType;
+import fr.wseduc.webutils.security.SecureHttpServerRequest;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+/*
+ * Token bucket rate limiting, to add in the chain after the authentication filter.
+ * Requests are counted by OAuth user or client (remote_user, client_id attributes), session
+ * user, verified session cookie or IP address, with a bucket by action type of the route.
+ * Configuration example :
+ * { "default" : { "capacity" : 100, "refill" : 20 }, "RESOURCE" : { "capacity" : 50, "refill" : 10 },
+ *   "max-buckets" : 100000, "trusted-proxies" : ["10.0.0.1"] }
+ * The IP address is the remote address, or the last X-Forwarded-For hop when the request
+ * comes from a trusted proxy.
+ * "capacity" is the burst size and "refill" the number of requests per second. Action types
+ * without limit (and without default) aren't limited.
+ */
+public class RateLimitFilter implements Filter, WithActionTypes {
+
+	private static final int STRIPES = 16;
+	private static final int DEFAULT_MAX_BUCKETS = 100000;
+	private static final String RETRY_AFTER = "rate_limit_retry_after";
+	private final Set<Binding> bindings;
+	private final Map<ActionType, Limit> limits = new EnumMap<>(ActionType.class);
+	private final Limit defaultLimit;
+	private final List<LRUCache<String, Bucket>> stripes;
+	private final Set<String> trustedProxies = new HashSet<>();
+
+	private static final class Limit {
+
+		private final double capacity;
+		private final double refillPerNano;
+
+		private Limit(JsonObject conf) {
+			this.capacity = conf.getNumber("capacity", 100).doubleValue();
+			this.refillPerNano = conf.getNumber("refill", 10).doubleValue() / 1e9;
+		}
+
+	}
+
+	/*
+	 * Refilled lazily, when a request consumes a token.
+	 */
+	private static final class Bucket {
+
+		private double tokens;
+		private long last;
+
+		private Bucket(double tokens, long last) {
+			this.tokens = tokens;
+			this.last = last;
+		}
+
+	}
+
+	public RateLimitFilter(Set<Binding> bindings, JsonObject config) {
+		this.bindings = bindings;
+		for (ActionType type : ActionType.values()) {
+			JsonObject conf = config.getObject(type.name());
+			if (conf != null) {
+				limits.put(type, new Limit(conf));
+			}
+		}
+		JsonObject conf = config.getObject("default");
+		this.defaultLimit = (conf != null) ? new Limit(conf) : null;
+		int maxBuckets = config.getInteger("max-buckets", DEFAULT_MAX_BUCKETS);
+		this.stripes = new ArrayList<>(STRIPES);
+		for (int i = 0; i < STRIPES; i++) {
+			stripes.add(new LRUCache<String, Bucket>(Math.max(1, maxBuckets / STRIPES)));
+		}
+		JsonArray proxies = config.getArray("trusted-proxies");
+		if (proxies != null) {
+			for (Object proxy : proxies) {
+				trustedProxies.add(proxy.toString());
+			}
+		}
+	}
+
+	@Override
+	public void canAccess(HttpServerRequest request, Handler<Boolean> handler) {
+		final ActionType type = actionType(request);
+		final Limit limit = (type != null && limits.containsKey(type)) ? limits.get(type) : defaultLimit;
+		if (limit == null) {
+			handler.handle(true);
+			return;
+		}
+		final long retryAfter = consume((type != null ? type.name() : "") + "|" + identity(request), limit);
+		if (retryAfter > 0 && request instanceof SecureHttpServerRequest) {
+			((SecureHttpServerRequest) request).setAttribute(RETRY_AFTER, String.valueOf(retryAfter));
+		}
+		handler.handle(retryAfter == 0);
+	}
+
+	/*
+	 * Without default limit, routes of the other action types don't go through this filter.
+	 */
+	@Override
+	public Set<ActionType> actionTypes() {
+		if (defaultLimit != null) {
+			return EnumSet.allOf(ActionType.class);
+		}
+		if (limits.isEmpty()) {
+			return EnumSet.noneOf(ActionType.class);
+		}
+		return EnumSet.copyOf(limits.keySet());
+	}
+
+	@Override
+	public void deny(HttpServerRequest request) {
+		String retryAfter = null;
+		if (request instanceof SecureHttpServerRequest) {
+			retryAfter = ((SecureHttpServerRequest) request).getAttribute(RETRY_AFTER);
+		}
+		request.response().putHeader("Retry-After", retryAfter != null ? retryAfter : "1");
+		request.response().setStatusCode(429).setStatusMessage("Too Many Requests").end();
+	}
+
+	/*
+	 * Returns 0 if a token is available, otherwise the seconds to wait for the next one.
+	 */
+	private long consume(String key, Limit limit) {
+		final LRUCache<String, Bucket> stripe = stripes.get((key.hashCode() & 0x7fffffff) % STRIPES);
+		final long now = System.nanoTime();
+		synchronized (stripe) {
+			Bucket b = stripe.get(key);
+			if (b == null) {
+				b = new Bucket(limit.capacity, now);
+				stripe.put(key, b);
+			} else {
+				b.tokens = Math.min(limit.capacity, b.tokens + (now - b.last) * limit.refillPerNano);
+				b.last = now;
+			}
+			if (b.tokens >= 1d) {
+				b.tokens -= 1d;
+				return 0l;
+			}
+			if (limit.refillPerNano <= 0) {
+				return 60l;
+			}
+			return Math.max(1l, (long) Math.ceil((1d - b.tokens) / limit.refillPerNano / 1e9));
+		}
+	}
+
+	/*
+	 * Action type set by the SecurityHandler of the route, the bindings are only
+	 * matched for handlers without action type.
+	 */
+	private ActionType actionType(HttpServerRequest request) {
+		if (request instanceof SecureHttpServerRequest &&
+				((SecureHttpServerRequest) request).getActionType() != null) {
+			return ((SecureHttpServerRequest) request).getActionType();
+		}
+		if (bindings == null) {
+			return null;
+		}
+		final String method = request.method();
+		final String path = request.path();
+		for (Binding binding : bindings) {
+			if (binding.getMethod().name().equals(method) && binding.getUriPattern().matcher(path).matches()) {
+				return binding.getActionType();
+			}
+		}
+		return null;
+	}
+
+	private String identity(HttpServerRequest request) {
+		if (request instanceof SecureHttpServerRequest) {
+			SecureHttpServerRequest sr = (SecureHttpServerRequest) request;
+			if (sr.getAttribute("remote_user") != null) {
+				return "user:" + sr.getAttribute("remote_user");
+			}
+			if (sr.getAttribute("client_id") != null) {
+				return "client:" + sr.getAttribute("client_id");
+			}
+			if (sr.getSession() != null && sr.getSession().getString("userId") != null) {
+				return "user:" + sr.getSession().getString("userId");
+			}
+			if (sr.getAttribute(UserAuthFilter.SESSION_ID_ATTRIBUTE) != null) {
+				return "session:" + sr.getAttribute(UserAuthFilter.SESSION_ID_ATTRIBUTE);
+			}
+		}
+		InetSocketAddress address = request.remoteAddress();
+		String ip = (address != null && address.getAddress() != null) ?
+				address.getAddress().getHostAddress() : "unknown";
+		if (trustedProxies.contains(ip)) {
+			// only the hop appended by the proxy, the previous ones are sent by the client
+			String forwarded = request.headers().get("X-Forwarded-For");
+			if (forwarded != null && !forwarded.trim().isEmpty()) {
+				ip = forwarded.substring(forwarded.lastIndexOf(',') + 1).trim();
+			}
+		}
+		return "ip:" + ip;
+	}
+
+}
@@ -16,9 +16,16 @@
 
 package fr.wseduc.webutils.request.filter;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
 
+import fr.wseduc.webutils.security.ActionType;
+import fr.wseduc.webutils.security.SanitizePolicy;
 import fr.wseduc.webutils.security.XssSecuredHttpServerRequest;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
@@ -30,68 +37,187 @@ import fr.wseduc.webutils.security.SecureHttpServerRequest;
  */
 public abstract class SecurityHandler implements Handler<HttpServerRequest> {
 
-	static protected List<Filter> chain = new ArrayList<>();
-	static {
-		chain.add(new UserAuthFilter());
+	/*
+	 * Filters are published as a new immutable chain on each modification,
+	 * requests keep the chain read when they start. The list is a writable view :
+	 * its modifications publish a new chain too.
+	 */
+	private static volatile Chain filters = new Chain(new Filter[] { new UserAuthFilter() });
+	static protected List<Filter> chain = new FilterList();
+	private final ActionType actionType;
+	private final SanitizePolicy policy;
+
+	/*
+	 * All filters, and the filters of each action type selected once by publication.
+	 */
+	private static final class Chain {
+
+		private final Filter[] all;
+		private final Map<ActionType, Filter[]> byActionType = new EnumMap<>(ActionType.class);
+
+		private Chain(Filter[] all) {
+			this.all = all;
+			for (ActionType type : ActionType.values()) {
+				List<Filter> f = new ArrayList<>();
+				for (Filter filter : all) {
+					if (!(filter instanceof WithActionTypes) ||
+							((WithActionTypes) filter).actionTypes().contains(type)) {
+						f.add(filter);
+					}
+				}
+				byActionType.put(type, f.toArray(new Filter[f.size()]));
+			}
+		}
+
+		private Filter[] filters(ActionType type) {
+			return (type != null) ? byActionType.get(type) : all;
+		}
+
 	}
 
-	@SuppressWarnings({ "unchecked", "rawtypes" })
-	private Handler<Boolean> chainToHandler(final HttpServerRequest request) {
-		final Handler [] handlers = new Handler[chain.size()];
-		handlers[chain.size() - 1] = new Handler<Boolean>() {
+	/*
+	 * Copy-on-write list of the current filters.
+	 */
+	private static final class FilterList extends AbstractList<Filter> implements RandomAccess {
 
-			@Override
-			public void handle(Boolean access) {
-				if (Boolean.TRUE.equals(access)) {
-					filter(request);
-				} else {
-					chain.get(chain.size() - 1).deny(request);
+		@Override
+		public Filter get(int index) {
+			return filters.all[index];
+		}
+
+		@Override
+		public int size() {
+			return filters.all.length;
+		}
+
+		@Override
+		public Filter set(int index, Filter filter) {
+			synchronized (SecurityHandler.class) {
+				Filter[] f = filters.all.clone();
+				Filter previous = f[index];
+				f[index] = filter;
+				publish(f);
+				return previous;
+			}
+		}
+
+		@Override
+		public void add(int index, Filter filter) {
+			synchronized (SecurityHandler.class) {
+				Filter[] current = filters.all;
+				if (index < 0 || index > current.length) {
+					throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + current.length);
 				}
+				Filter[] f = new Filter[current.length + 1];
+				System.arraycopy(current, 0, f, 0, index);
+				f[index] = filter;
+				System.arraycopy(current, index, f, index + 1, current.length - index);
+				publish(f);
+				modCount++;
 			}
-		};
-		for (int i = chain.size() - 2; i >= 0; i--) {
-			final int idx = i;
-
-			handlers[i] = new Handler<Boolean>() {
-
-				@Override
-				public void handle(Boolean access) {
-					if (Boolean.TRUE.equals(access)) {
-						chain.get(idx + 1).canAccess(request, handlers[idx + 1]);
-					} else {
-						chain.get(idx).deny(request);
-					}
+		}
+
+		@Override
+		public Filter remove(int index) {
+			synchronized (SecurityHandler.class) {
+				Filter[] current = filters.all;
+				Filter previous = current[index];
+				Filter[] f = new Filter[current.length - 1];
+				System.arraycopy(current, 0, f, 0, index);
+				System.arraycopy(current, index + 1, f, index, current.length - index - 1);
+				publish(f);
+				modCount++;
+				return previous;
+			}
+		}
+
+		@Override
+		public void clear() {
+			clearFilters();
+			modCount++;
+		}
+
+	}
+
+	public SecurityHandler() {
+		this(null);
+	}
+
+	/*
+	 * @param actionType type of the secured route, only its filters are applied. Null for all filters.
+	 */
+	public SecurityHandler(ActionType actionType) {
+		this(actionType, SanitizePolicy.ALL);
+	}
+
+	/*
+	 * @param policy XSS cleaning of the request given to the filters and the route.
+	 */
+	public SecurityHandler(ActionType actionType, SanitizePolicy policy) {
+		this.actionType = actionType;
+		this.policy = policy;
+	}
+
+	/*
+	 * Walks the filters of one request : the only allocation of the chain.
+	 */
+	private final class Continuation implements Handler<Boolean> {
+
+		private final Filter[] filters;
+		private final HttpServerRequest request;
+		private int idx;
+
+		private Continuation(Filter[] filters, HttpServerRequest request) {
+			this.filters = filters;
+			this.request = request;
+		}
+
+		@Override
+		public void handle(Boolean access) {
+			if (Boolean.TRUE.equals(access)) {
+				if (++idx < filters.length) {
+					filters[idx].canAccess(request, this);
+				} else {
+					filter(request);
 				}
-			};
+			} else {
+				filters[idx].deny(request);
+			}
 		}
 
-		return handlers[0];
 	}
 
 	@Override
 	public void handle(HttpServerRequest request) {
-		if (chain != null && !chain.isEmpty()) {
-			SecureHttpServerRequest sr = new XssSecuredHttpServerRequest(request);
-			chain.get(0).canAccess(sr, chainToHandler(sr));
+		final Filter[] f = filters.filters(actionType);
+		if (f.length > 0) {
+			SecureHttpServerRequest sr = (policy == SanitizePolicy.NONE) ? new SecureHttpServerRequest(request) :
+					new XssSecuredHttpServerRequest(request, policy);
+			sr.setActionType(actionType);
+			f[0].canAccess(sr, new Continuation(f, sr));
 		} else {
 			filter(request);
 		}
 	}
 
-	public static void addFilter(Filter filter) {
-		chain.add(filter);
+	public static synchronized void addFilter(Filter filter) {
+		Filter[] f = Arrays.copyOf(filters.all, filters.all.length + 1);
+		f[filters.all.length] = filter;
+		publish(f);
 	}
 
-	public static void clearFilters() {
-		chain.clear();
+	public static synchronized void clearFilters() {
+		publish(new Filter[0]);
+	}
+
+	private static void publish(Filter[] f) {
+		filters = new Chain(f);
 	}
 
 	public static void setVertx(Vertx vertx) {
-		if (chain != null) {
-			for (Filter f : chain) {
-				if (f instanceof WithVertx) {
-					((WithVertx) f).setVertx(vertx);
-				}
+		for (Filter f : filters.all) {
+			if (f instanceof WithVertx) {
+				((WithVertx) f).setVertx(vertx);
 			}
 		}
 	}
@@ -16,6 +16,7 @@
 
 package fr.wseduc.webutils.request.filter;
 
+import fr.wseduc.webutils.collections.TTLCache;
 import fr.wseduc.webutils.http.Renders;
 import fr.wseduc.webutils.request.CookieHelper;
 import fr.wseduc.webutils.security.SecureHttpServerRequest;
@@ -26,7 +27,9 @@ import java.net.URLEncoder;
 
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
+import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.json.JsonObject;
 import org.vertx.java.core.logging.Logger;
 import org.vertx.java.core.logging.impl.LoggerFactory;
 import org.vertx.java.core.shareddata.ConcurrentSharedMap;
@@ -34,9 +37,27 @@ import org.vertx.java.core.shareddata.ConcurrentSharedMap;
 public class UserAuthFilter implements Filter, WithVertx {
 
 	private static final Logger log = LoggerFactory.getLogger(UserAuthFilter.class);
+	private static final String SESSION_COOKIE = "oneSessionId";
+	private static final long DEFAULT_SESSION_CACHE_TTL = 60000l;
+	private static final int DEFAULT_SESSION_CACHE_SIZE = 10000;
+	public static final String SESSION_LOGOUT_ADDRESS = "wse.session.logout";
+	/* verified session id of a cookie authenticated request */
+	public static final String SESSION_ID_ATTRIBUTE = "session_id";
 	private final OAuthResourceProvider oauth;
 	private final AbstractBasicFilter basicFilter;
 	private Vertx vertx;
+	private volatile TTLCache<String, VerifiedSession> sessions =
+			new TTLCache<>(DEFAULT_SESSION_CACHE_SIZE, DEFAULT_SESSION_CACHE_TTL);
+	private volatile boolean cacheSessionObject;
+
+	/*
+	 * Session id of a verified cookie and, if enabled, a copy of the session loaded for it.
+	 */
+	private static final class VerifiedSession {
+
+		private volatile JsonObject session;
+
+	}
 
 	public UserAuthFilter() {
 		this.oauth = null;
@@ -53,10 +74,34 @@ public class UserAuthFilter implements Filter, WithVertx {
 		this.basicFilter = basicFilter;
 	}
 
+	/*
+	 * Verified cookies are cached by raw value : a cached cookie skips the signature check
+	 * and, if "sessionCacheObject" is enabled, gets a copy of the cached session.
+	 */
 	@Override
 	public void canAccess(HttpServerRequest request, Handler<Boolean> handler) {
-		String oneSeesionId = CookieHelper.getInstance().getSigned("oneSessionId", request);
+		final String raw = CookieHelper.get(SESSION_COOKIE, request);
+		if (raw != null) {
+			VerifiedSession verified = sessions.get(raw);
+			if (verified != null) {
+				JsonObject session = verified.session;
+				if (request instanceof SecureHttpServerRequest) {
+					SecureHttpServerRequest sr = (SecureHttpServerRequest) request;
+					sr.setAttribute(SESSION_ID_ATTRIBUTE, raw.substring(0, raw.lastIndexOf(':')));
+					if (session != null && sr.getSession() == null) {
+						sr.setSession(session.copy());
+					}
+				}
+				handler.handle(true);
+				return;
+			}
+		}
+		String oneSeesionId = CookieHelper.getInstance().getSigned(SESSION_COOKIE, request);
 		if (oneSeesionId != null && !oneSeesionId.trim().isEmpty()) {
+			if (request instanceof SecureHttpServerRequest) {
+				((SecureHttpServerRequest) request).setAttribute(SESSION_ID_ATTRIBUTE, oneSeesionId);
+			}
+			cache(oneSeesionId, request);
 			handler.handle(true);
 		} else if (basicFilter != null && request instanceof SecureHttpServerRequest &&
 				basicFilter.hasBasicHeader(request)) {
@@ -68,6 +113,37 @@ public class UserAuthFilter implements Filter, WithVertx {
 		}
 	}
 
+	private void cache(String sessionId, HttpServerRequest request) {
+		final String key = CookieHelper.getInstance().signedValue(SESSION_COOKIE, sessionId);
+		if (key == null) {
+			return;
+		}
+		final VerifiedSession verified = new VerifiedSession();
+		sessions.put(key, verified);
+		if (cacheSessionObject && request instanceof SecureHttpServerRequest) {
+			((SecureHttpServerRequest) request).sessionHandler(new Handler<JsonObject>() {
+				@Override
+				public void handle(JsonObject session) {
+					verified.session = session.copy();
+				}
+			});
+		}
+	}
+
+	/*
+	 * Removes a session from the cache, or all sessions if sessionId is null.
+	 */
+	public void invalidate(String sessionId) {
+		if (sessionId == null) {
+			sessions.clear();
+			return;
+		}
+		String key = CookieHelper.getInstance().signedValue(SESSION_COOKIE, sessionId);
+		if (key != null) {
+			sessions.remove(key);
+		}
+	}
+
 	@Override
 	public void deny(HttpServerRequest request) {
 		String callBack = "";
@@ -110,9 +186,41 @@ public class UserAuthFilter implements Filter, WithVertx {
 		request.response().end();
 	}
 
+	/*
+	 * Session cache is configured with "sessionCacheTtl" (ms, 0 to disable), "sessionCacheSize"
+	 * and "sessionCacheObject" of the "server" shared map. Logouts published on
+	 * SESSION_LOGOUT_ADDRESS with a "sessionId" remove the session from the cache.
+	 * Basic credentials are invalidated on AbstractBasicFilter.CLIENT_INVALIDATE_ADDRESS.
+	 */
 	@Override
 	public void setVertx(Vertx vertx) {
+		final boolean registered = this.vertx != null;
 		this.vertx = vertx;
+		if (vertx == null || registered) {
+			return;
+		}
+		ConcurrentSharedMap<Object, Object> confServer = vertx.sharedData().getMap("server");
+		Object ttl = confServer.get("sessionCacheTtl");
+		Object size = confServer.get("sessionCacheSize");
+		if (ttl instanceof Number || size instanceof Number) {
+			sessions = new TTLCache<>(
+					size instanceof Number ? ((Number) size).intValue() : DEFAULT_SESSION_CACHE_SIZE,
+					ttl instanceof Number ? ((Number) ttl).longValue() : DEFAULT_SESSION_CACHE_TTL);
+		}
+		cacheSessionObject = Boolean.TRUE.equals(confServer.get("sessionCacheObject"));
+		if (basicFilter != null) {
+			basicFilter.registerInvalidationHandler(vertx.eventBus());
+		}
+		vertx.eventBus().registerHandler(SESSION_LOGOUT_ADDRESS, new Handler<Message<Object>>() {
+			@Override
+			public void handle(Message<Object> message) {
+				if (message.body() instanceof JsonObject) {
+					invalidate(((JsonObject) message.body()).getString("sessionId"));
+				} else if (message.body() instanceof String) {
+					invalidate((String) message.body());
+				}
+			}
+		});
 	}
 
 }
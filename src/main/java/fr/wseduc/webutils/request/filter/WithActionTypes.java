@@ -0,0 +1,31 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.wseduc.webutils.request.filter;
+
+import java.util.Set;
+
+import fr.wseduc.webutils.security.ActionType;
+
+/*
+ * Filter only applied to routes of the given action types.
+ * Filters without this interface are applied to all secured routes.
+ */
+public interface WithActionTypes {
+
+	Set<ActionType> actionTypes();
+
+}
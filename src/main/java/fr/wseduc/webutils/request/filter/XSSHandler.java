@@ -16,15 +16,30 @@
 
 package fr.wseduc.webutils.request.filter;
 
+import fr.wseduc.webutils.security.SanitizePolicy;
 import fr.wseduc.webutils.security.XssHttpServerRequest;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.http.HttpServerRequest;
 
 public abstract class XSSHandler implements Handler<HttpServerRequest> {
 
+	private final SanitizePolicy policy;
+
+	public XSSHandler() {
+		this(SanitizePolicy.ALL);
+	}
+
+	public XSSHandler(SanitizePolicy policy) {
+		this.policy = policy;
+	}
+
 	@Override
 	public void handle(HttpServerRequest request) {
-		filter(new XssHttpServerRequest(request));
+		if (policy == SanitizePolicy.NONE) {
+			filter(request);
+		} else {
+			filter(new XssHttpServerRequest(request, policy));
+		}
 	}
 
 	public abstract void filter(HttpServerRequest request);
@@ -31,6 +31,19 @@
 package fr.wseduc.webutils.security;
 
 import java.io.UnsupportedEncodingException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fr.wseduc.webutils.DefaultAsyncResult;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
 
 import java.security.SecureRandom;
 
@@ -82,6 +95,13 @@ public class BCrypt {
     private static final int GENSALT_DEFAULT_LOG2_ROUNDS = 10;
     private static final int BCRYPT_SALT_LEN = 16;
 
+    // Worker pool of the asynchronous methods, see configurePool
+    public static final int DEFAULT_POOL_THREADS =
+        Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    public static final int DEFAULT_POOL_QUEUE = 128;
+    private static volatile ThreadPoolExecutor pool;
+    private static final AtomicLong rejected = new AtomicLong();
+
     // Blowfish parameters
     private static final int BLOWFISH_NUM_ROUNDS = 16;
 
@@ -765,4 +785,151 @@ public class BCrypt {
     public static boolean checkpw(String plaintext, String hashed) {
         return (hashed.compareTo(hashpw(plaintext, hashed)) == 0);
     }
+
+    /**
+     * Size the worker pool of the asynchronous methods. A pool with
+     * other limits is replaced, its waiting computations still complete.
+     * @param threads   the number of computations running in parallel
+     * @param queue the number of computations waiting for a worker
+     */
+    public static synchronized void configurePool(int threads, int queue) {
+        ThreadPoolExecutor current = pool;
+        if (current != null && current.getCorePoolSize() == threads &&
+                current.getQueue().size() + current.getQueue().remainingCapacity() == queue) {
+            return;
+        }
+        pool = newPool(threads, queue);
+        if (current != null) {
+            current.shutdown();
+        }
+    }
+
+    private static ThreadPoolExecutor pool() {
+        ThreadPoolExecutor p = pool;
+        if (p == null) {
+            synchronized (BCrypt.class) {
+                if (pool == null) {
+                    pool = newPool(DEFAULT_POOL_THREADS, DEFAULT_POOL_QUEUE);
+                }
+                p = pool;
+            }
+        }
+        return p;
+    }
+
+    private static ThreadPoolExecutor newPool(int threads, int queue) {
+        ThreadPoolExecutor p = new ThreadPoolExecutor(
+            threads, threads, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(queue), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "bcrypt-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        p.allowCoreThreadTimeOut(true);
+        return p;
+    }
+
+    /**
+     * Check a password on the bcrypt worker pool, leaving the event
+     * loop free. The handler is called on the context of the caller.
+     * When the pool queue is full the result is failed with a
+     * RejectedExecutionException, without computing anything.
+     * @param vertx the vertx instance
+     * @param plaintext the plaintext password to verify
+     * @param hashed    the previously-hashed password
+     * @param handler   receives true if the passwords match
+     */
+    public static void checkpwAsync(Vertx vertx, final String plaintext,
+            final String hashed, Handler<AsyncResult<Boolean>> handler) {
+        submit(vertx, handler, new Task<Boolean>() {
+            @Override
+            Boolean run() {
+                return checkpw(plaintext, hashed);
+            }
+        });
+    }
+
+    /**
+     * Hash a password on the bcrypt worker pool, see checkpwAsync
+     * @param vertx the vertx instance
+     * @param password  the password to hash
+     * @param salt  the salt to hash with (perhaps generated using BCrypt.gensalt)
+     * @param handler   receives the hashed password
+     */
+    public static void hashpwAsync(Vertx vertx, final String password,
+            final String salt, Handler<AsyncResult<String>> handler) {
+        submit(vertx, handler, new Task<String>() {
+            @Override
+            String run() {
+                return hashpw(password, salt);
+            }
+        });
+    }
+
+    /**
+     * @return  the number of computations waiting for a worker
+     */
+    public static int queueDepth() {
+        return pool().getQueue().size();
+    }
+
+    /**
+     * @return  the number of computations running
+     */
+    public static int activeCount() {
+        return pool().getActiveCount();
+    }
+
+    /**
+     * @return  the number of computations rejected since startup
+     */
+    public static long rejectedCount() {
+        return rejected.get();
+    }
+
+    private static abstract class Task<T> {
+        abstract T run();
+    }
+
+    private static <T> void submit(Vertx vertx, final Handler<AsyncResult<T>> handler,
+            final Task<T> task) {
+        final Context context = (vertx != null) ? vertx.currentContext() : null;
+        final ThreadPoolExecutor p = pool();
+        try {
+            p.execute(new Runnable() {
+                @Override
+                public void run() {
+                    AsyncResult<T> result;
+                    try {
+                        result = new DefaultAsyncResult<T>(task.run());
+                    } catch (Throwable e) {
+                        result = new DefaultAsyncResult<T>(e);
+                    }
+                    reply(context, handler, result);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            reply(context, handler, new DefaultAsyncResult<T>(new RejectedExecutionException(
+                "BCrypt pool saturated : " + p.getQueue().size() + " computations already waiting")));
+        }
+    }
+
+    private static <T> void reply(Context context, final Handler<AsyncResult<T>> handler,
+            final AsyncResult<T> result) {
+        if (context == null) {
+            handler.handle(result);
+            return;
+        }
+        context.runOnContext(new Handler<Void>() {
+            @Override
+            public void handle(Void v) {
+                handler.handle(result);
+            }
+        });
+    }
 }
@@ -19,26 +19,23 @@ package fr.wseduc.webutils.security;
 import org.vertx.java.core.json.impl.Base64;
 
 import javax.crypto.Cipher;
-import javax.crypto.spec.SecretKeySpec;
 import java.security.GeneralSecurityException;
 
 public class Blowfish {
 
 	public static String encrypt(String data, String key) throws GeneralSecurityException {
-		byte[] keyData = key.getBytes();
-		SecretKeySpec secretKeySpec = new SecretKeySpec(keyData, "Blowfish");
-		Cipher cipher = Cipher.getInstance("Blowfish");
-		cipher.init(Cipher.ENCRYPT_MODE, secretKeySpec);
-		byte[] b = cipher.doFinal(data.getBytes());
-		return Base64.encodeBytes(b);
+		byte[] b = CryptoPool.cipher("Blowfish", Cipher.ENCRYPT_MODE, key).doFinal(data.getBytes());
+		return CryptoPool.base64(b);
 	}
 
 	public static String decrypt(String data, String key) throws GeneralSecurityException {
-		byte[] keyData = key.getBytes();
-		SecretKeySpec secretKeySpec = new SecretKeySpec(keyData, "Blowfish");
-		Cipher cipher = Cipher.getInstance("Blowfish");
-		cipher.init(Cipher.DECRYPT_MODE, secretKeySpec);
-		byte[] b = cipher.doFinal(Base64.decode(data));
+		byte[] b;
+		try {
+			b = CryptoPool.cipher("Blowfish", Cipher.DECRYPT_MODE, key).doFinal(Base64.decode(data));
+		} catch (GeneralSecurityException e) {
+			CryptoPool.discardCipher("Blowfish", Cipher.DECRYPT_MODE, key);
+			throw e;
+		}
 		return new String(b);
 	}
 
@@ -0,0 +1,146 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.wseduc.webutils.security;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/*
+ * Per thread Mac, MessageDigest and Cipher instances, initialized once by algorithm and key.
+ * Instances are returned ready to use and must not leave the calling thread.
+ */
+public final class CryptoPool {
+
+	private static final int MAX_KEYS_BY_THREAD = 16;
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private static final char[] BASE64 =
+			"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+	private static final ThreadLocal<Map<String, Object>> instances = new ThreadLocal<Map<String, Object>>() {
+		@Override
+		protected Map<String, Object> initialValue() {
+			return new LinkedHashMap<String, Object>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+					return size() > MAX_KEYS_BY_THREAD;
+				}
+			};
+		}
+	};
+
+	private CryptoPool() {}
+
+	public static Mac mac(String algorithm, String key) throws NoSuchAlgorithmException, InvalidKeyException {
+		final String id = "mac\0" + algorithm + "\0" + key;
+		final Map<String, Object> m = instances.get();
+		Mac mac = (Mac) m.get(id);
+		if (mac == null) {
+			mac = Mac.getInstance(algorithm);
+			mac.init(new SecretKeySpec(key.getBytes(), algorithm));
+			m.put(id, mac);
+		}
+		return mac;
+	}
+
+	public static MessageDigest digest(String algorithm) throws NoSuchAlgorithmException {
+		final String id = "digest\0" + algorithm;
+		final Map<String, Object> m = instances.get();
+		MessageDigest digest = (MessageDigest) m.get(id);
+		if (digest == null) {
+			digest = MessageDigest.getInstance(algorithm);
+			m.put(id, digest);
+		} else {
+			digest.reset();
+		}
+		return digest;
+	}
+
+	/*
+	 * Cipher initialized with the key spec of the algorithm name (ex : "Blowfish").
+	 * A cipher is back to its initial state after doFinal, so it is reused as is.
+	 */
+	public static Cipher cipher(String algorithm, int mode, String key) throws GeneralSecurityException {
+		final String id = cipherId(algorithm, mode, key);
+		final Map<String, Object> m = instances.get();
+		Cipher cipher = (Cipher) m.get(id);
+		if (cipher == null) {
+			cipher = Cipher.getInstance(algorithm);
+			cipher.init(mode, new SecretKeySpec(key.getBytes(), algorithm));
+			m.put(id, cipher);
+		}
+		return cipher;
+	}
+
+	/*
+	 * Drops the cipher of the thread, ex : after a failed doFinal.
+	 */
+	public static void discardCipher(String algorithm, int mode, String key) {
+		instances.get().remove(cipherId(algorithm, mode, key));
+	}
+
+	private static String cipherId(String algorithm, int mode, String key) {
+		return "cipher\0" + algorithm + "\0" + mode + "\0" + key;
+	}
+
+	public static String hex(byte[] bytes) {
+		final char[] out = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			out[i * 2] = HEX[(bytes[i] >> 4) & 0x0f];
+			out[i * 2 + 1] = HEX[bytes[i] & 0x0f];
+		}
+		return new String(out);
+	}
+
+	/*
+	 * Same output as vert.x Base64.encodeBytes : standard alphabet with padding,
+	 * a line break after each 76 characters of complete groups.
+	 */
+	public static String base64(byte[] bytes) {
+		final int len = bytes.length;
+		final int groups = len / 3;
+		final char[] out = new char[(len + 2) / 3 * 4 + groups / 19];
+		int i = 0, o = 0, line = 0;
+		for (; i + 2 < len; i += 3) {
+			final int b = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff);
+			out[o++] = BASE64[b >>> 18];
+			out[o++] = BASE64[(b >>> 12) & 0x3f];
+			out[o++] = BASE64[(b >>> 6) & 0x3f];
+			out[o++] = BASE64[b & 0x3f];
+			if ((line += 4) == 76) {
+				out[o++] = '\n';
+				line = 0;
+			}
+		}
+		if (i < len) {
+			final int b = (bytes[i] & 0xff) << 16 | ((i + 1 < len) ? (bytes[i + 1] & 0xff) << 8 : 0);
+			out[o++] = BASE64[b >>> 18];
+			out[o++] = BASE64[(b >>> 12) & 0x3f];
+			out[o++] = (i + 1 < len) ? BASE64[(b >>> 6) & 0x3f] : '=';
+			out[o] = '=';
+		}
+		return new String(out);
+	}
+
+}
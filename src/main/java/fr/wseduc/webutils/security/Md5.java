@@ -16,7 +16,6 @@
 
 package fr.wseduc.webutils.security;
 
-import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -24,13 +23,9 @@ public class Md5 {
 
 	public static String hash(String input) throws NoSuchAlgorithmException {
 		if(input == null) return null;
-		MessageDigest digest = MessageDigest.getInstance("MD5");
+		MessageDigest digest = CryptoPool.digest("MD5");
 		digest.update(input.getBytes(), 0, input.length());
-		String hash = new BigInteger(1, digest.digest()).toString(16);
-		while (hash.length() < 32) {
-			hash = "0" + hash;
-		}
-		return hash;
+		return CryptoPool.hex(digest.digest());
 	}
 
 }
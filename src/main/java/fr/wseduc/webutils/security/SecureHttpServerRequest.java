@@ -18,6 +18,7 @@ package fr.wseduc.webutils.security;
 
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -34,11 +35,18 @@ import org.vertx.java.core.http.HttpVersion;
 import org.vertx.java.core.json.JsonObject;
 import org.vertx.java.core.net.NetSocket;
 
+import fr.wseduc.webutils.I18n;
+import fr.wseduc.webutils.request.CookieHelper;
+
 public class SecureHttpServerRequest implements HttpServerRequest {
 
 	private final HttpServerRequest request;
 	private JsonObject session;
+	private String language;
+	private Handler<JsonObject> sessionHandler;
 	private final Map<String, String> attributes;
+	private Map<String, String> cookies;
+	private ActionType actionType;
 	private Buffer body;
 	private boolean end;
 
@@ -193,12 +201,51 @@ public class SecureHttpServerRequest implements HttpServerRequest {
 		return request.formAttributes();
 	}
 
+	/*
+	 * Action type of the secured route, null if unknown.
+	 */
+	public ActionType getActionType() {
+		return actionType;
+	}
+
+	public void setActionType(ActionType actionType) {
+		this.actionType = actionType;
+	}
+
+	/*
+	 * Cookies of the request (first value of each name), parsed once.
+	 */
+	public Map<String, String> getCookies() {
+		if (cookies == null) {
+			cookies = Collections.unmodifiableMap(CookieHelper.parse(headers().get("Cookie")));
+		}
+		return cookies;
+	}
+
 	public JsonObject getSession() {
 		return session;
 	}
 
+	/*
+	 * Language of the user preferences, parsed when the session is set. Null if not defined.
+	 */
+	public String getLanguage() {
+		return language;
+	}
+
+	/*
+	 * Called each time a session is set on this request (ex : to cache it).
+	 */
+	public void sessionHandler(Handler<JsonObject> handler) {
+		this.sessionHandler = handler;
+	}
+
 	public void setSession(JsonObject session) {
+		this.language = I18n.preferredLanguage(session);
 		this.session = session;
+		if (sessionHandler != null && session != null) {
+			sessionHandler.handle(session);
+		}
 	}
 
 	public void setAttribute(String attr, String value) {
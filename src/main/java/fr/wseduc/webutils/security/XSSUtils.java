@@ -56,7 +56,7 @@ public final class XSSUtils {
 	}
 
 	public static String stripXSS(String value) {
-		if (value != null) {
+		if (value != null && mayContainXSS(value)) {
 			//value = ESAPI.encoder().canonicalize(value);
 			value = value.replaceAll("\0", "");
 			for (Pattern scriptPattern : patterns){
@@ -66,4 +66,126 @@ public final class XSSUtils {
 		return value;
 	}
 
+	/*
+	 * Tokens which start a match of one of the patterns, with the character which must follow
+	 * them to complete the match (0 if the token is enough). The patterns are case insensitive
+	 * for ASCII characters only.
+	 */
+	private static final String[] tokens = {
+			"<script", "</script>", "eval(", "expression(", "javascript:", "vbscript:",
+			"onload", "onmouse", "onclick"
+	};
+	private static final char[] closing = { '>', 0, ')', ')', 0, 0, '=', '=', '=' };
+	private static final int[][] transitions;
+	private static final int[] outputs;
+
+	/*
+	 * Aho-Corasick automaton of the lowercase tokens, as a complete transition table
+	 * on ASCII characters. outputs holds a bitmask of the tokens ending on each state.
+	 */
+	static {
+		final List<int[]> t = new ArrayList<>();
+		final List<Integer> out = new ArrayList<>();
+		t.add(new int[128]);
+		out.add(0);
+		for (int i = 0; i < tokens.length; i++) {
+			int state = 0;
+			for (char c : tokens[i].toCharArray()) {
+				if (t.get(state)[c] == 0) {
+					t.add(new int[128]);
+					out.add(0);
+					t.get(state)[c] = t.size() - 1;
+				}
+				state = t.get(state)[c];
+			}
+			out.set(state, out.get(state) | (1 << i));
+		}
+		// breadth first completion of the transitions with the failure links
+		final int[] fail = new int[t.size()];
+		final List<Integer> queue = new ArrayList<>();
+		for (int c = 0; c < 128; c++) {
+			if (t.get(0)[c] != 0) {
+				queue.add(t.get(0)[c]);
+			}
+		}
+		for (int q = 0; q < queue.size(); q++) {
+			final int state = queue.get(q);
+			out.set(state, out.get(state) | out.get(fail[state]));
+			for (int c = 0; c < 128; c++) {
+				final int next = t.get(state)[c];
+				if (next != 0) {
+					fail[next] = t.get(fail[state])[c];
+					queue.add(next);
+				} else {
+					t.get(state)[c] = t.get(fail[state])[c];
+				}
+			}
+		}
+		transitions = t.toArray(new int[t.size()][]);
+		outputs = new int[out.size()];
+		for (int i = 0; i < outputs.length; i++) {
+			outputs[i] = out.get(i);
+		}
+	}
+
+	/*
+	 * Single pass over the value : false if no pattern can match, so stripXSS returns the value
+	 * unchanged. Values without any of the characters < : ( = and NUL are never scanned further.
+	 */
+	static boolean mayContainXSS(String value) {
+		final int len = value.length();
+		int i = 0;
+		while (i < len) {
+			final char c = value.charAt(i);
+			if (c == '<' || c == ':' || c == '(' || c == '=' || c == 0) break;
+			i++;
+		}
+		if (i == len) {
+			return false;
+		}
+		// end of the first occurrence of each token, and last position of the closing characters
+		final int[] ends = new int[tokens.length];
+		int lastGt = -1, lastParen = -1, lastEq = -1;
+		int state = 0;
+		for (i = 0; i < len; i++) {
+			char c = value.charAt(i);
+			if (c == 0) {
+				return true;
+			} else if (c == '>') {
+				lastGt = i;
+			} else if (c == ')') {
+				lastParen = i;
+			} else if (c == '=') {
+				lastEq = i;
+			}
+			if (c >= 128) {
+				state = 0;
+				continue;
+			}
+			if (c >= 'A' && c <= 'Z') {
+				c += 'a' - 'A';
+			}
+			state = transitions[state][c];
+			int found = outputs[state];
+			while (found != 0) {
+				final int token = Integer.numberOfTrailingZeros(found);
+				found &= found - 1;
+				if (closing[token] == 0) {
+					return true;
+				}
+				if (ends[token] == 0) {
+					ends[token] = i + 1;
+				}
+			}
+		}
+		for (int token = 0; token < tokens.length; token++) {
+			if (ends[token] == 0) continue;
+			final int last = (closing[token] == '>') ? lastGt : (closing[token] == ')') ? lastParen : lastEq;
+			if (last >= ends[token]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.wseduc.webutils.security;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.netty.buffer.ByteBufInputStream;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.json.DecodeException;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import static fr.wseduc.webutils.security.XSSUtils.stripXSS;
+
+/*
+ * Streaming json decoding : keys and decoded string values are cleaned as they are read,
+ * the request body is read once without string copy of the whole text.
+ * Numbers are decoded like the vert.x mapper (Integer, Long, BigInteger, Double).
+ * Routes without cleaning use the same decoding with clean false.
+ */
+public final class XssJsonDecoder {
+
+	private static final JsonFactory factory = new JsonFactory()
+			.configure(JsonParser.Feature.ALLOW_COMMENTS, true);
+
+	private XssJsonDecoder() {}
+
+	public static JsonObject decodeObject(Buffer buffer) {
+		return decodeObject(buffer, true);
+	}
+
+	public static JsonArray decodeArray(Buffer buffer) {
+		return decodeArray(buffer, true);
+	}
+
+	public static JsonObject decodeObject(Buffer buffer, boolean clean) {
+		try (JsonParser parser = parser(buffer)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new DecodeException("Failed to decode : json object expected");
+			}
+			return readObject(parser, clean);
+		} catch (IOException e) {
+			throw new DecodeException("Failed to decode : " + e.getMessage());
+		}
+	}
+
+	public static JsonArray decodeArray(Buffer buffer, boolean clean) {
+		try (JsonParser parser = parser(buffer)) {
+			if (parser.nextToken() != JsonToken.START_ARRAY) {
+				throw new DecodeException("Failed to decode : json array expected");
+			}
+			return readArray(parser, clean);
+		} catch (IOException e) {
+			throw new DecodeException("Failed to decode : " + e.getMessage());
+		}
+	}
+
+	private static JsonParser parser(Buffer buffer) throws IOException {
+		return factory.createParser(new ByteBufInputStream(buffer.getByteBuf().duplicate()));
+	}
+
+	private static JsonObject readObject(JsonParser parser, boolean clean) throws IOException {
+		JsonObject json = new JsonObject();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = clean ? stripXSS(parser.getCurrentName()) : parser.getCurrentName();
+			json.putValue(name, readValue(parser, parser.nextToken(), clean));
+		}
+		return json;
+	}
+
+	private static JsonArray readArray(JsonParser parser, boolean clean) throws IOException {
+		JsonArray json = new JsonArray();
+		JsonToken token;
+		while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+			Object value = readValue(parser, token, clean);
+			if (value == null) {
+				json.addString(null);
+			} else {
+				json.add(value);
+			}
+		}
+		return json;
+	}
+
+	private static Object readValue(JsonParser parser, JsonToken token, boolean clean) throws IOException {
+		if (token == null) {
+			throw new DecodeException("Failed to decode : unexpected end of input");
+		}
+		switch (token) {
+			case START_OBJECT:
+				return readObject(parser, clean);
+			case START_ARRAY:
+				return readArray(parser, clean);
+			case VALUE_STRING:
+				return clean ? stripXSS(parser.getText()) : parser.getText();
+			case VALUE_NUMBER_INT:
+			case VALUE_NUMBER_FLOAT:
+				return parser.getNumberValue();
+			case VALUE_TRUE:
+				return Boolean.TRUE;
+			case VALUE_FALSE:
+				return Boolean.FALSE;
+			case VALUE_NULL:
+				return null;
+			default:
+				throw new DecodeException("Failed to decode : unexpected token " + token);
+		}
+	}
+
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.wseduc.webutils.security;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.vertx.java.core.MultiMap;
+
+import static fr.wseduc.webutils.security.XSSUtils.stripXSS;
+
+/*
+ * Sanitized view of a request MultiMap : the values of a name are cleaned on first read
+ * and kept for the request, the underlying map isn't modified by reads.
+ * Names are case insensitive like the headers, params and form attributes of vert.x requests.
+ * Not thread safe, like the request.
+ */
+public class XssMultiMap implements MultiMap {
+
+	private final MultiMap map;
+	private final Map<String, List<String>> cleaned;
+	private List<Map.Entry<String, String>> entries;
+	private int entriesSize;
+
+	public XssMultiMap(MultiMap map) {
+		this(map, true);
+	}
+
+	public XssMultiMap(MultiMap map, boolean caseInsensitive) {
+		this.map = map;
+		this.cleaned = caseInsensitive ? new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER) :
+				new HashMap<String, List<String>>();
+	}
+
+	private List<String> cleaned(String name) {
+		List<String> values = cleaned.get(name);
+		if (values == null) {
+			List<String> raw = map.getAll(name);
+			if (raw == null || raw.isEmpty()) {
+				// not kept : form attributes may be decoded later
+				return Collections.emptyList();
+			}
+			values = new ArrayList<>(raw.size());
+			for (String v : raw) {
+				values.add(stripXSS(v));
+			}
+			values = Collections.unmodifiableList(values);
+			cleaned.put(name, values);
+		}
+		return values;
+	}
+
+	@Override
+	public String get(CharSequence name) {
+		return get(name.toString());
+	}
+
+	@Override
+	public String get(String name) {
+		List<String> values = cleaned(name);
+		return values.isEmpty() ? null : values.get(0);
+	}
+
+	@Override
+	public List<String> getAll(String name) {
+		return new ArrayList<>(cleaned(name));
+	}
+
+	@Override
+	public List<String> getAll(CharSequence name) {
+		return getAll(name.toString());
+	}
+
+	@Override
+	public List<Map.Entry<String, String>> entries() {
+		return new ArrayList<>(cleanedEntries());
+	}
+
+	@Override
+	public Iterator<Map.Entry<String, String>> iterator() {
+		return cleanedEntries().iterator();
+	}
+
+	/*
+	 * Kept until a write, or a change of size of the map (form attributes decoded later).
+	 */
+	private List<Map.Entry<String, String>> cleanedEntries() {
+		final int size = map.size();
+		if (entries == null || entriesSize != size) {
+			List<Map.Entry<String, String>> e = new ArrayList<>();
+			for (Map.Entry<String, String> entry : map.entries()) {
+				e.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), stripXSS(entry.getValue())));
+			}
+			entries = Collections.unmodifiableList(e);
+			entriesSize = size;
+		}
+		return entries;
+	}
+
+	private void invalidate(String name) {
+		entries = null;
+		if (name == null) {
+			cleaned.clear();
+		} else {
+			cleaned.remove(name);
+		}
+	}
+
+	@Override
+	public boolean contains(String name) {
+		return map.contains(name);
+	}
+
+	@Override
+	public boolean contains(CharSequence name) {
+		return map.contains(name);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return map.isEmpty();
+	}
+
+	@Override
+	public Set<String> names() {
+		return map.names();
+	}
+
+	@Override
+	public MultiMap add(String name, String value) {
+		invalidate(name);
+		map.add(name, value);
+		return this;
+	}
+
+	@Override
+	public MultiMap add(CharSequence name, CharSequence value) {
+		invalidate(name.toString());
+		map.add(name, value);
+		return this;
+	}
+
+	@Override
+	public MultiMap add(String name, Iterable<String> values) {
+		invalidate(name);
+		map.add(name, values);
+		return this;
+	}
+
+	@Override
+	public MultiMap add(CharSequence name, Iterable<CharSequence> values) {
+		invalidate(name.toString());
+		map.add(name, values);
+		return this;
+	}
+
+	@Override
+	public MultiMap add(MultiMap m) {
+		invalidate(null);
+		map.add(m);
+		return this;
+	}
+
+	@Override
+	public MultiMap add(Map<String, String> m) {
+		invalidate(null);
+		map.add(m);
+		return this;
+	}
+
+	@Override
+	public MultiMap set(String name, String value) {
+		invalidate(name);
+		map.set(name, value);
+		return this;
+	}
+
+	@Override
+	public MultiMap set(CharSequence name, CharSequence value) {
+		invalidate(name.toString());
+		map.set(name, value);
+		return this;
+	}
+
+	@Override
+	public MultiMap set(String name, Iterable<String> values) {
+		invalidate(name);
+		map.set(name, values);
+		return this;
+	}
+
+	@Override
+	public MultiMap set(CharSequence name, Iterable<CharSequence> values) {
+		invalidate(name.toString());
+		map.set(name, values);
+		return this;
+	}
+
+	@Override
+	public MultiMap set(MultiMap m) {
+		invalidate(null);
+		map.set(m);
+		return this;
+	}
+
+	@Override
+	public MultiMap set(Map<String, String> m) {
+		invalidate(null);
+		map.set(m);
+		return this;
+	}
+
+	@Override
+	public MultiMap remove(String name) {
+		invalidate(name);
+		map.remove(name);
+		return this;
+	}
+
+	@Override
+	public MultiMap remove(CharSequence name) {
+		invalidate(name.toString());
+		map.remove(name);
+		return this;
+	}
+
+	@Override
+	public MultiMap clear() {
+		invalidate(null);
+		map.clear();
+		return this;
+	}
+
+	@Override
+	public int size() {
+		return map.size();
+	}
+
+}
@@ -19,28 +19,58 @@ package fr.wseduc.webutils.security;
 import org.vertx.java.core.MultiMap;
 import org.vertx.java.core.http.HttpServerRequest;
 
-import static fr.wseduc.webutils.security.XSSUtils.safeMultiMap;
-
 
 public class XssSecuredHttpServerRequest extends SecureHttpServerRequest {
 
+	private XssMultiMap formAttributes;
+	private XssMultiMap params;
+	private XssMultiMap headers;
+	private final boolean cleanFormAttributes;
+
 	public XssSecuredHttpServerRequest(HttpServerRequest request) {
+		this(request, SanitizePolicy.ALL);
+	}
+
+	/*
+	 * @param policy PARAMS leaves form attributes as received, NONE shouldn't be wrapped.
+	 */
+	public XssSecuredHttpServerRequest(HttpServerRequest request, SanitizePolicy policy) {
 		super(request);
+		this.cleanFormAttributes = (policy == SanitizePolicy.ALL);
+	}
+
+	/*
+	 * Whether the body (form attributes, json) is cleaned : ALL policy.
+	 */
+	public boolean sanitizeBody() {
+		return cleanFormAttributes;
 	}
 
 	@Override
 	public MultiMap formAttributes() {
-		return safeMultiMap(super.formAttributes());
+		if (!cleanFormAttributes) {
+			return super.formAttributes();
+		}
+		if (formAttributes == null) {
+			formAttributes = new XssMultiMap(super.formAttributes());
+		}
+		return formAttributes;
 	}
 
 	@Override
 	public MultiMap params() {
-		return safeMultiMap(super.params());
+		if (params == null) {
+			params = new XssMultiMap(super.params());
+		}
+		return params;
 	}
 
 	@Override
 	public MultiMap headers() {
-		return safeMultiMap(super.headers());
+		if (headers == null) {
+			headers = new XssMultiMap(super.headers());
+		}
+		return headers;
 	}
 
 }
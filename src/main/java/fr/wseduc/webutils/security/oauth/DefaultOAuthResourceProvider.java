@@ -16,51 +16,189 @@
 
 package fr.wseduc.webutils.security.oauth;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.vertx.java.core.AsyncResult;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.EventBus;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonObject;
 
+import fr.wseduc.webutils.collections.TTLCache;
 import fr.wseduc.webutils.security.SecureHttpServerRequest;
 
+/*
+ * Valid tokens are cached with their client, user and scope until their expiry
+ * ("expires_in" of the wse.oauth reply, in seconds) or a default time to live.
+ * Only the token is sent to wse.oauth, and requests of the same event loop
+ * waiting for the same token share one validation.
+ * Revoked tokens published on TOKEN_REVOKE_ADDRESS (a "token", or nothing to clear
+ * the cache) are removed from the cache.
+ */
 public class DefaultOAuthResourceProvider implements OAuthResourceProvider {
 
 	private final EventBus eb;
 	private static final String OAUTH_ADDRESS = "wse.oauth";
+	public static final String TOKEN_REVOKE_ADDRESS = "wse.oauth.revoke";
+	private static final long VALIDATION_TIMEOUT = 10 * 1000l;
+	private static final int DEFAULT_CACHE_SIZE = 10000;
+	private static final long DEFAULT_TTL = 60 * 1000l;
+	private final TTLCache<String, TokenInfo> tokens;
+	private final ThreadLocal<Map<String, List<Waiter>>> pending = new ThreadLocal<Map<String, List<Waiter>>>() {
+		@Override
+		protected Map<String, List<Waiter>> initialValue() {
+			return new HashMap<>();
+		}
+	};
+
+	private static final class TokenInfo {
+
+		private final String clientId;
+		private final String remoteUser;
+		private final String scope;
+
+		private TokenInfo(String clientId, String remoteUser, String scope) {
+			this.clientId = clientId;
+			this.remoteUser = remoteUser;
+			this.scope = scope;
+		}
+
+	}
+
+	private static final class Waiter {
+
+		private final SecureHttpServerRequest request;
+		private final Handler<Boolean> handler;
+
+		private Waiter(SecureHttpServerRequest request, Handler<Boolean> handler) {
+			this.request = request;
+			this.handler = handler;
+		}
+
+	}
 
 	public DefaultOAuthResourceProvider(EventBus eb) {
+		this(eb, DEFAULT_CACHE_SIZE, DEFAULT_TTL);
+	}
+
+	/*
+	 * @param ttl time to live of tokens without expiry in milliseconds
+	 */
+	public DefaultOAuthResourceProvider(EventBus eb, int cacheSize, long ttl) {
 		this.eb = eb;
+		this.tokens = new TTLCache<>(cacheSize, ttl);
+		if (eb != null) {
+			eb.registerHandler(TOKEN_REVOKE_ADDRESS, new Handler<Message<Object>>() {
+				@Override
+				public void handle(Message<Object> message) {
+					String token = null;
+					if (message.body() instanceof JsonObject) {
+						token = ((JsonObject) message.body()).getString("token");
+					} else if (message.body() instanceof String) {
+						token = (String) message.body();
+					}
+					invalidate(token);
+				}
+			});
+		}
+	}
+
+	/*
+	 * Removes a revoked token from the cache, or all tokens if null.
+	 */
+	public void invalidate(String token) {
+		if (token == null) {
+			tokens.clear();
+		} else {
+			tokens.remove(token);
+		}
 	}
 
 	@Override
 	public void validToken(final SecureHttpServerRequest request, final Handler<Boolean> handler) {
-		JsonObject headers = new JsonObject();
-		for (String name : request.headers().names()) {
-			headers.putString(name, request.headers().get(name));
+		final JsonObject headers = new JsonObject();
+		final JsonObject params = new JsonObject();
+		final String token = token(request, headers, params);
+		if (token == null || token.isEmpty()) {
+			handler.handle(false);
+			return;
+		}
+		final TokenInfo info = tokens.get(token);
+		if (info != null) {
+			accept(request, info);
+			handler.handle(true);
+			return;
 		}
-		JsonObject params = new JsonObject();
-		for (String name : request.params().names()) {
-			params.putString(name, request.params().get(name));
+		final Map<String, List<Waiter>> p = pending.get();
+		List<Waiter> waiters = p.get(token);
+		request.pause();
+		if (waiters != null) {
+			waiters.add(new Waiter(request, handler));
+			return;
 		}
+		waiters = new ArrayList<>();
+		waiters.add(new Waiter(request, handler));
+		p.put(token, waiters);
 		JsonObject json = new JsonObject()
 		.putObject("headers", headers)
 		.putObject("params", params);
-		request.pause();
-		eb.send(OAUTH_ADDRESS, json, new Handler<Message<JsonObject>>() {
+		eb.sendWithTimeout(OAUTH_ADDRESS, json, VALIDATION_TIMEOUT, new Handler<AsyncResult<Message<JsonObject>>>() {
 
 			@Override
-			public void handle(Message<JsonObject> res) {
-				request.resume();
-				if ("ok".equals(res.body().getString("status"))) {
-					request.setAttribute("client_id", res.body().getString("client_id"));
-					request.setAttribute("remote_user", res.body().getString("remote_user"));
-					request.setAttribute("scope", res.body().getString("scope"));
-					handler.handle(true);
-				} else {
-					handler.handle(false);
+			public void handle(AsyncResult<Message<JsonObject>> ar) {
+				// removed on failure or timeout too, the next request sends a new validation
+				List<Waiter> waiters = pending.get().remove(token);
+				TokenInfo info = null;
+				if (ar.succeeded() && "ok".equals(ar.result().body().getString("status"))) {
+					JsonObject res = ar.result().body();
+					info = new TokenInfo(res.getString("client_id"),
+							res.getString("remote_user"), res.getString("scope"));
+					Number expiresIn = res.getNumber("expires_in");
+					if (expiresIn != null) {
+						tokens.put(token, info, expiresIn.longValue() * 1000l);
+					} else {
+						tokens.put(token, info);
+					}
+				}
+				if (waiters == null) {
+					return;
+				}
+				for (Waiter w : waiters) {
+					w.request.resume();
+					if (info != null) {
+						accept(w.request, info);
+					}
+					w.handler.handle(info != null);
 				}
 			}
 		});
 	}
 
+	/*
+	 * Bearer token of the Authorization header or access_token parameter, copied in the
+	 * headers or params sent to wse.oauth.
+	 */
+	private static String token(SecureHttpServerRequest request, JsonObject headers, JsonObject params) {
+		String authorization = request.headers().get("Authorization");
+		if (authorization != null && authorization.regionMatches(true, 0, "Bearer ", 0, 7)) {
+			headers.putString("Authorization", authorization);
+			return authorization.substring(7).trim();
+		}
+		String accessToken = request.params().get("access_token");
+		if (accessToken != null) {
+			params.putString("access_token", accessToken);
+			return accessToken;
+		}
+		return null;
+	}
+
+	private static void accept(SecureHttpServerRequest request, TokenInfo info) {
+		request.setAttribute("client_id", info.clientId);
+		request.setAttribute("remote_user", info.remoteUser);
+		request.setAttribute("scope", info.scope);
+	}
+
 }
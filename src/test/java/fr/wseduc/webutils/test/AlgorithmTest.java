@@ -16,24 +16,39 @@
 
 package fr.wseduc.webutils.test;
 
+import fr.wseduc.webutils.security.BCrypt;
 import fr.wseduc.webutils.security.Blowfish;
+import fr.wseduc.webutils.security.CryptoPool;
+import fr.wseduc.webutils.security.HmacSha1;
 import fr.wseduc.webutils.security.JWT;
 import fr.wseduc.webutils.security.Md5;
 import fr.wseduc.webutils.security.Sha256;
 import org.junit.Test;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
 import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.json.impl.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
 import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class AlgorithmTest {
 
@@ -51,6 +66,66 @@ public class AlgorithmTest {
 		assertEquals(data, decryptedData);
 	}
 
+	@Test
+	public void blowfishWrongKey() throws GeneralSecurityException {
+		final String encryptedData = Blowfish.encrypt("Lorem ipsum", "key-1234");
+		try {
+			Blowfish.decrypt(encryptedData, "key-5678");
+		} catch (GeneralSecurityException e) {
+			// bad padding
+		}
+		assertEquals("Lorem ipsum", Blowfish.decrypt(encryptedData, "key-1234"));
+	}
+
+	@Test
+	public void hmacSha1() throws Exception {
+		final String key = "secret-key";
+		Mac mac = Mac.getInstance("HmacSHA1");
+		mac.init(new SecretKeySpec(key.getBytes(), "HmacSHA1"));
+		final String content = "nulloneSessionId/2f6d8c1e-b9e0-4a85-a16d-ff2e5c4e2b11";
+		final String expected = Base64.encodeBytes(mac.doFinal(content.getBytes("UTF-8")));
+		assertEquals(expected, HmacSha1.sign(content, key));
+		assertEquals(expected, HmacSha1.sign(content, key));
+	}
+
+	@Test
+	public void hexAndBase64() {
+		final Random random = new Random(42);
+		for (int len = 0; len < 300; len++) {
+			byte[] bytes = new byte[len];
+			random.nextBytes(bytes);
+			assertEquals(Base64.encodeBytes(bytes), CryptoPool.base64(bytes));
+			String hex = new BigInteger(1, bytes).toString(16);
+			while (hex.length() < len * 2) {
+				hex = "0" + hex;
+			}
+			assertEquals(len == 0 ? "" : hex, CryptoPool.hex(bytes));
+		}
+	}
+
+	@Test
+	public void bcryptAsync() throws InterruptedException {
+		final BlockingQueue<AsyncResult<?>> results = new ArrayBlockingQueue<>(2);
+		final String hash = BCrypt.hashpw("password", BCrypt.gensalt(4));
+		BCrypt.checkpwAsync(null, "password", hash, new Handler<AsyncResult<Boolean>>() {
+			@Override
+			public void handle(AsyncResult<Boolean> event) {
+				results.add(event);
+			}
+		});
+		BCrypt.hashpwAsync(null, "password", hash, new Handler<AsyncResult<String>>() {
+			@Override
+			public void handle(AsyncResult<String> event) {
+				results.add(event);
+			}
+		});
+		for (int i = 0; i < 2; i++) {
+			AsyncResult<?> r = results.poll(10, TimeUnit.SECONDS);
+			assertTrue(r.succeeded());
+			assertTrue(Boolean.TRUE.equals(r.result()) || hash.equals(r.result()));
+		}
+	}
+
 	@Test
 	public void hashSha256() throws NoSuchAlgorithmException {
 		assertEquals("278cb091126f9b2eebdf8c008b53ec592e190e5b417a1f2fb5e5d7faf1d0b874", Sha256.hash("Javarmi.com"));
@@ -0,0 +1,89 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.wseduc.webutils.test;
+
+import fr.wseduc.webutils.http.ByteRange;
+import fr.wseduc.webutils.http.ETag;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ByteRangeTest {
+
+	private static void assertRange(long start, long end, ByteRange r) {
+		assertEquals(start, r.getStart());
+		assertEquals(end, r.getEnd());
+	}
+
+	@Test
+	public void parseSingleRanges() {
+		assertRange(0, 499, ByteRange.parse("bytes=0-499", 1000).get(0));
+		assertRange(900, 999, ByteRange.parse("bytes=900-", 1000).get(0));
+		assertRange(500, 999, ByteRange.parse("bytes=-500", 1000).get(0));
+		assertRange(990, 999, ByteRange.parse("bytes=990-5000", 1000).get(0));
+		assertEquals("bytes 0-499/1000", ByteRange.parse("bytes=0-499", 1000).get(0).contentRange(1000));
+	}
+
+	@Test
+	public void parseMultipleRanges() {
+		List<ByteRange> ranges = ByteRange.parse("bytes=0-1, 5-6,-2", 10);
+		assertEquals(3, ranges.size());
+		assertRange(0, 1, ranges.get(0));
+		assertRange(5, 6, ranges.get(1));
+		assertRange(8, 9, ranges.get(2));
+		StringBuilder tooMany = new StringBuilder("bytes=");
+		for (int i = 0; i < 17; i++) {
+			tooMany.append(i).append('-').append(i).append(',');
+		}
+		assertNull(ByteRange.parse(tooMany.toString(), 100));
+	}
+
+	@Test
+	public void parseWholeOrInvalid() {
+		assertNull(ByteRange.parse(null, 1000));
+		assertNull(ByteRange.parse("items=0-1", 1000));
+		assertNull(ByteRange.parse("bytes=0-999", 1000));
+		assertNull(ByteRange.parse("bytes=-5000", 1000));
+		assertNull(ByteRange.parse("bytes=500-100", 1000));
+		assertNull(ByteRange.parse("bytes=abc", 1000));
+		assertNull(ByteRange.parse("bytes=0-99999999999999999999", 1000));
+	}
+
+	@Test
+	public void parseUnsatisfiable() {
+		assertTrue(ByteRange.parse("bytes=1000-2000", 1000).isEmpty());
+		assertTrue(ByteRange.parse("bytes=-0", 1000).isEmpty());
+	}
+
+	@Test
+	public void ifRange() {
+		final String etag = ETag.of("5f1b2c");
+		final String date = "Wed, 21 Oct 2015 07:28:00 GMT";
+		assertTrue(ByteRange.ifRangeMatches(null, etag, date));
+		assertTrue(ByteRange.ifRangeMatches("\"5f1b2c\"", etag, null));
+		assertFalse(ByteRange.ifRangeMatches("\"other\"", etag, null));
+		assertFalse(ByteRange.ifRangeMatches("W/\"5f1b2c\"", etag, null));
+		assertTrue(ByteRange.ifRangeMatches(date, null, date));
+		assertFalse(ByteRange.ifRangeMatches(date, etag, null));
+	}
+
+}
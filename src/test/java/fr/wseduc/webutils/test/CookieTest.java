@@ -0,0 +1,88 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.wseduc.webutils.test;
+
+import fr.wseduc.webutils.request.CookieHelper;
+import fr.wseduc.webutils.security.SecureHttpServerRequest;
+import io.netty.handler.codec.http.Cookie;
+import io.netty.handler.codec.http.CookieDecoder;
+import org.junit.Test;
+import org.vertx.java.core.http.CaseInsensitiveMultiMap;
+import org.vertx.java.core.http.HttpServerRequest;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class CookieTest {
+
+	private static final String[] headers = {
+			"oneSessionId=abc:123",
+			"a=1; b=2;c=3 ;  d = 4 ",
+			"a=1; b=\"quoted; \\\"value\\\"\"; c=",
+			"x='a b'; y=\"q\"z; w",
+			"lang=fr; oneSessionId=2f6d8c1e-b9e0-4a85-a16d-ff2e5c4e2b11:0123456789abcdef; _ga=GA1.2.3"
+	};
+
+	@Test
+	public void parseMatchesNettyDecoder() {
+		for (String header : headers) {
+			Map<String, String> cookies = CookieHelper.parse(header);
+			int count = 0;
+			for (Cookie c : CookieDecoder.decode(header)) {
+				assertEquals(header, c.getValue(), cookies.get(c.getName()));
+				count++;
+			}
+			assertEquals(header, count, cookies.size());
+		}
+	}
+
+	private static HttpServerRequest requestWithCookie(String header) {
+		final CaseInsensitiveMultiMap headers = new CaseInsensitiveMultiMap();
+		headers.add("Cookie", header);
+		return (HttpServerRequest) Proxy.newProxyInstance(CookieTest.class.getClassLoader(),
+				new Class<?>[]{HttpServerRequest.class}, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if ("headers".equals(method.getName())) {
+					return headers;
+				}
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	@Test
+	public void secureRequestUsesParsedCookies() {
+		final CookieHelper helper = CookieHelper.getInstance();
+		helper.init("test-key", null);
+		final String signed = helper.signedValue("s", "value");
+		for (String header : new String[] {"a=1; s=" + signed, "s=value:bad; a=1; s=" + signed, "a=1"}) {
+			final HttpServerRequest request = requestWithCookie(header);
+			final SecureHttpServerRequest secure = new SecureHttpServerRequest(request);
+			assertEquals(header, CookieHelper.get("a", request), CookieHelper.get("a", secure));
+			assertEquals(header, CookieHelper.get("s", request), CookieHelper.get("s", secure));
+			assertEquals(header, helper.getSigned("s", request), helper.getSigned("s", secure));
+		}
+		assertEquals("value", helper.getSigned("s", new SecureHttpServerRequest(
+				requestWithCookie("s=value:bad; s=" + signed))));
+	}
+
+}
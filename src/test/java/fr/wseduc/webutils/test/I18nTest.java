@@ -0,0 +1,100 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.wseduc.webutils.test;
+
+import fr.wseduc.webutils.i18n.CompiledMessage;
+import fr.wseduc.webutils.i18n.LocaleResolver;
+import fr.wseduc.webutils.i18n.MessageBundle;
+import org.junit.Test;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class I18nTest {
+
+	private static String replaceAll(String text, String... args) {
+		for (int i = 0; i < args.length; i++) {
+			text = text.replaceAll("\\{" + i + "\\}", args[i]);
+		}
+		return text;
+	}
+
+	@Test
+	public void compiledMessageMatchesReplaceAll() {
+		final String[] values = {
+				"Hello {0}", "{0}{1}", "{1} and {0} and {1}", "{0", "{ 0}", "{a}{0}", "{{0}}",
+				"{00} {01} {0}", "{10} {2}", "trailing {0} text", "}{0}{"
+		};
+		final String[][] args = {
+				{}, {"a"}, {"a", "b"}, {"a", "b", "c", "d", "e", "f", "g", "h", "i", "j", "k"}
+		};
+		for (String value : values) {
+			CompiledMessage message = CompiledMessage.compile(value);
+			for (String[] a : args) {
+				assertEquals(value, replaceAll(value, a), message == null ? value : message.format(a));
+			}
+		}
+	}
+
+	@Test
+	public void compiledMessageWithoutPlaceholder() {
+		assertNull(CompiledMessage.compile("no placeholder"));
+		assertNull(CompiledMessage.compile("{a} {} {-1}"));
+	}
+
+	@Test
+	public void compiledMessageLiteralArguments() {
+		assertEquals("cost $1 \\ {1}", CompiledMessage.compile("cost {0} {1}").format("$1 \\"));
+		assertEquals("{0} b", CompiledMessage.compile("{0} {1}").format(null, "b"));
+	}
+
+	@Test
+	public void resolveLocale() {
+		final LocaleResolver resolver = new LocaleResolver(16);
+		final Set<Locale> available = new HashSet<>(Arrays.asList(
+				Locale.FRENCH, Locale.ENGLISH, Locale.forLanguageTag("pt-BR")));
+		assertEquals(Locale.FRENCH, resolver.resolve(null, available, Locale.FRENCH));
+		assertEquals(Locale.ENGLISH, resolver.resolve("en-US,fr;q=0.8", available, Locale.FRENCH));
+		assertEquals(Locale.FRENCH, resolver.resolve("en-us;q=0.8,fr-fr;q=0.9", available, Locale.FRENCH));
+		assertEquals(Locale.forLanguageTag("pt-BR"), resolver.resolve("pt-br,en", available, Locale.FRENCH));
+		assertEquals(Locale.ENGLISH, resolver.resolve("pt-PT,en;q=0.5", available, Locale.FRENCH));
+		assertEquals(Locale.ENGLISH, resolver.resolve("de,*;q=0.9,en;q=0.1", available, Locale.FRENCH));
+		assertEquals(Locale.FRENCH, resolver.resolve("de, es;q=0.5, en;q=0", available, Locale.FRENCH));
+		assertEquals(Locale.ENGLISH, resolver.resolve("en-x-private", available, Locale.FRENCH));
+	}
+
+	@Test
+	public void overlayBundle() {
+		final MessageBundle defaults = new MessageBundle(new JsonObject()
+				.putString("hello", "Bonjour {0}").putString("bye", "Au revoir"));
+		final MessageBundle domain = defaults.overlay(new JsonObject().putString("hello", "Salut {0}"));
+		assertEquals(1, domain.size());
+		assertEquals("Salut toi", domain.translate("hello", "toi"));
+		assertEquals("Au revoir", domain.translate("bye"));
+		assertEquals("missing", domain.translate("missing"));
+		assertEquals(new JsonObject().putString("hello", "Salut {0}").putString("bye", "Au revoir"),
+				domain.getMessages());
+		assertEquals("Bonjour toi", defaults.translate("hello", "toi"));
+	}
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.wseduc.webutils.test;
+
+import fr.wseduc.webutils.http.StaticResource;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class StaticResourceTest {
+
+	@Test
+	public void normalizeKeepsCanonicalPath() {
+		assertEquals("./public/js/app.js", StaticResource.normalize("./public/js/app.js"));
+		assertEquals("./public/js/app.js", StaticResource.normalize("public/js/app.js"));
+	}
+
+	@Test
+	public void normalizeResolvesDotSegments() {
+		assertEquals("./public/js/app.js", StaticResource.normalize("./public/css/../js/app.js"));
+		assertEquals("./public/js/app.js", StaticResource.normalize("./public/./js//app.js"));
+		assertEquals("./public/app.js", StaticResource.normalize("./public/js/../../public/app.js"));
+	}
+
+	@Test
+	public void normalizeRejectsTraversal() {
+		assertNull(StaticResource.normalize("./public/../conf.json"));
+		assertNull(StaticResource.normalize("./public/../../etc/passwd"));
+		assertNull(StaticResource.normalize("../public/app.js"));
+		assertNull(StaticResource.normalize("./public"));
+		assertNull(StaticResource.normalize("./public/js/.."));
+		assertNull(StaticResource.normalize("./private/app.js"));
+	}
+
+	@Test
+	public void normalizeRejectsEncodedSeparators() {
+		assertNull(StaticResource.normalize("./public/%2e%2e/conf.json"));
+		assertNull(StaticResource.normalize("./public/%2E%2E%2Fconf.json"));
+		assertNull(StaticResource.normalize("./public/..%2fconf.json"));
+		assertNull(StaticResource.normalize("./public/..%5cconf.json"));
+		assertNull(StaticResource.normalize("./public/..\\conf.json"));
+		assertEquals("./public/img/a%20b.png", StaticResource.normalize("./public/img/a%20b.png"));
+	}
+
+	@Test
+	public void normalizeRejectsInvalid() {
+		assertNull(StaticResource.normalize(null));
+		assertNull(StaticResource.normalize("./public/app.js\0.png"));
+	}
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fr.wseduc.webutils.test;
+
+import fr.wseduc.webutils.request.RequestUtils;
+import fr.wseduc.webutils.security.SanitizePolicy;
+import fr.wseduc.webutils.security.XSSUtils;
+import fr.wseduc.webutils.security.XssHttpServerRequest;
+import fr.wseduc.webutils.security.XssJsonDecoder;
+import fr.wseduc.webutils.security.XssMultiMap;
+import org.junit.Test;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.MultiMap;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.http.CaseInsensitiveMultiMap;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.json.DecodeException;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class XSSTest {
+
+	private static final Pattern[] patterns = new Pattern[]{
+			Pattern.compile("<script>(.*?)</script>", Pattern.CASE_INSENSITIVE),
+			Pattern.compile("<script>", Pattern.CASE_INSENSITIVE),
+			Pattern.compile("</script>", Pattern.CASE_INSENSITIVE),
+			Pattern.compile("<script(.*?)>", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE | Pattern.DOTALL),
+			Pattern.compile("eval\\((.*?)\\)", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE | Pattern.DOTALL),
+			Pattern.compile("expression\\((.*?)\\)", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE | Pattern.DOTALL),
+			Pattern.compile("javascript:", Pattern.CASE_INSENSITIVE),
+			Pattern.compile("vbscript:", Pattern.CASE_INSENSITIVE),
+			Pattern.compile("onload(.*?)=", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE | Pattern.DOTALL),
+			Pattern.compile("onmouse(.*?)=", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE | Pattern.DOTALL),
+			Pattern.compile("onclick(.*?)=", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE | Pattern.DOTALL)
+	};
+
+	private static String legacyStripXSS(String value) {
+		value = value.replaceAll("\0", "");
+		for (Pattern scriptPattern : patterns){
+			value = scriptPattern.matcher(value).replaceAll("");
+		}
+		return value;
+	}
+
+	private static final String[] fragments = {
+			"<script", "<SCRIPT>", ">", "</script>", "</ScRiPt>", "eval(", "EVAL (", ")", "expression(",
+			"javascript:", "JavaScript", "vbscript:", "onload", "onMouseOver", "onclick", "ONCLICK", "=",
+			"\0", "a", " ", "\n", "<", ":", "(", "on", "load", "script", "é", "K", "java", "scr", "ipt"
+	};
+
+	@Test
+	public void stripXSSMatchesLegacyPatterns() {
+		final Random random = new Random(42);
+		for (int n = 0; n < 200000; n++) {
+			final StringBuilder sb = new StringBuilder();
+			final int count = random.nextInt(8);
+			for (int i = 0; i < count; i++) {
+				sb.append(fragments[random.nextInt(fragments.length)]);
+			}
+			final String value = sb.toString();
+			assertEquals(value, legacyStripXSS(value), XSSUtils.stripXSS(value));
+		}
+	}
+
+	@Test
+	public void stripXSSFastPath() {
+		final String value = "Lorem ipsum dolor sit amet, consectetur adipiscing elit {\"a\" : [1, 2]}";
+		assertSame(value, XSSUtils.stripXSS(value));
+		final String text = "onclick is explained in <b>the</b> doc (see eval docs: chapter 2)";
+		assertSame(text, XSSUtils.stripXSS(text));
+		assertEquals("", XSSUtils.stripXSS("<script>alert(1)</script>"));
+		assertEquals("", XSSUtils.stripXSS("javascript:"));
+	}
+
+	@Test
+	public void decodeJsonCleansStrings() {
+		final JsonObject json = XssJsonDecoder.decodeObject(new Buffer(
+				"{\"a\" : \"x\\u003cscript>alert(1)\\u003c/script>y\", \"b\" : [1, 5000000000, 1.5, true, null, " +
+				"{\"onclick=\" : \"ok\"}], \"c\" : \"\\\"quoted\\\"\"}"));
+		assertEquals("xy", json.getString("a"));
+		assertEquals("\"quoted\"", json.getString("c"));
+		final JsonArray b = json.getArray("b");
+		assertEquals(Integer.valueOf(1), b.get(0));
+		assertEquals(Long.valueOf(5000000000L), b.get(1));
+		assertEquals(Double.valueOf(1.5), b.get(2));
+		assertEquals(Boolean.TRUE, b.get(3));
+		assertNull(b.get(4));
+		assertEquals("ok", ((JsonObject) b.get(5)).getString(""));
+		assertEquals(new JsonObject("{\"a\":{\"b\":[]}}"), XssJsonDecoder.decodeObject(new Buffer("{\"a\":{\"b\":[]}}")));
+		assertEquals(2, XssJsonDecoder.decodeArray(new Buffer("[{}, \"javascript:\"]")).size());
+	}
+
+	@Test(expected = DecodeException.class)
+	public void decodeJsonInvalid() {
+		XssJsonDecoder.decodeObject(new Buffer("{\"a\" : "));
+	}
+
+	@Test
+	public void multiMapNamesCase() {
+		final MultiMap headers = new CaseInsensitiveMultiMap().add("Content-Type", "text/html<script>x</script>");
+		final MultiMap safe = new XssMultiMap(headers);
+		assertEquals("text/html", safe.get("content-type"));
+		assertEquals("text/html", safe.entries().get(0).getValue());
+		safe.set("Content-Type", "application/json");
+		assertEquals("application/json", safe.get("content-type"));
+		assertEquals("application/json", safe.get("CONTENT-TYPE"));
+		assertEquals("application/json", safe.entries().get(0).getValue());
+		safe.remove("CONTENT-type");
+		assertNull(safe.get("Content-Type"));
+		assertEquals(1, headers.set("X", "javascript:").size());
+		assertEquals("", safe.get("x"));
+	}
+
+	private static HttpServerRequest requestWithBody(final String body) {
+		return (HttpServerRequest) Proxy.newProxyInstance(XSSTest.class.getClassLoader(),
+				new Class<?>[]{HttpServerRequest.class}, new InvocationHandler() {
+			@Override
+			@SuppressWarnings("unchecked")
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if ("bodyHandler".equals(method.getName())) {
+					((Handler<Buffer>) args[0]).handle(new Buffer(body));
+					return proxy;
+				}
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	@Test
+	public void bodyToJsonSanitizePolicy() {
+		final String body = "{\"a\" : \"x<script>alert(1)</script>y\"}";
+		final JsonObject[] result = new JsonObject[1];
+		final Handler<JsonObject> handler = new Handler<JsonObject>() {
+			@Override
+			public void handle(JsonObject json) {
+				result[0] = json;
+			}
+		};
+		RequestUtils.bodyToJson(requestWithBody(body), handler);
+		assertEquals("xy", result[0].getString("a"));
+		RequestUtils.bodyToJson(new XssHttpServerRequest(requestWithBody(body)), handler);
+		assertEquals("xy", result[0].getString("a"));
+		RequestUtils.bodyToJson(new XssHttpServerRequest(requestWithBody(body), SanitizePolicy.PARAMS), handler);
+		assertEquals("x<script>alert(1)</script>y", result[0].getString("a"));
+	}
+
+}